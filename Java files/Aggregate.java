@@ -0,0 +1,162 @@
+/****************************************************************************************
+ * @file  Aggregate.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+/****************************************************************************************
+ * The Aggregate class specifies an aggregate function for Table.groupBy.  Nulls are
+ * ignored by every aggregate except count (), which counts tuples; an aggregate over a
+ * group with no non-null values yields null.
+ * -  count (), count (attr): Long
+ * -  sum (attr): Long for INTEGER attributes, Double for REAL attributes
+ * -  avg (attr): Double
+ * -  min (attr), max (attr): the attribute's domain
+ */
+public class Aggregate
+{
+    /** Aggregate function kinds. */
+    enum Kind { COUNT, SUM, AVG, MIN, MAX }
+
+    /** The aggregate function. */
+    final Kind kind;
+    /** The attribute aggregated (null for count ()). */
+    final String attr;
+
+    /************************************************************************************
+     * Construct an aggregate specification.
+     * @param _kind  the aggregate function
+     * @param _attr  the attribute aggregated (null for count ())
+     */
+    private Aggregate (Kind _kind, String _attr)
+    {
+        kind = _kind;
+        attr = _attr;
+    } // constructor
+
+    /************************************************************************************
+     * Count the tuples in each group.
+     *
+     * @return  the aggregate specification
+     */
+    public static Aggregate count ()
+    {
+        return new Aggregate (Kind.COUNT, null);
+    } // count
+
+    /************************************************************************************
+     * Count the non-null values of the attribute in each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate specification
+     */
+    public static Aggregate count (String attr)
+    {
+        return new Aggregate (Kind.COUNT, attr);
+    } // count
+
+    /************************************************************************************
+     * Sum the attribute in each group.
+     *
+     * @param attr  the attribute (INTEGER or REAL domain)
+     * @return  the aggregate specification
+     */
+    public static Aggregate sum (String attr)
+    {
+        return new Aggregate (Kind.SUM, attr);
+    } // sum
+
+    /************************************************************************************
+     * Average the attribute in each group.
+     *
+     * @param attr  the attribute (INTEGER or REAL domain)
+     * @return  the aggregate specification
+     */
+    public static Aggregate avg (String attr)
+    {
+        return new Aggregate (Kind.AVG, attr);
+    } // avg
+
+    /************************************************************************************
+     * Find the minimum of the attribute in each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate specification
+     */
+    public static Aggregate min (String attr)
+    {
+        return new Aggregate (Kind.MIN, attr);
+    } // min
+
+    /************************************************************************************
+     * Find the maximum of the attribute in each group.
+     *
+     * @param attr  the attribute
+     * @return  the aggregate specification
+     */
+    public static Aggregate max (String attr)
+    {
+        return new Aggregate (Kind.MAX, attr);
+    } // max
+
+    /************************************************************************************
+     * Return the name of the result attribute (e.g., "count", "avg_length").
+     *
+     * @return  the result attribute name
+     */
+    String name ()
+    {
+        String k = kind.name ().toLowerCase ();
+        return (attr == null) ? k : k + "_" + attr;
+    } // name
+
+    /************************************************************************************
+     * Return the domain of the result attribute.
+     *
+     * @param dom  the domain of the aggregated attribute (ignored for count)
+     * @return  the result domain
+     */
+    Class resultDomain (Class dom)
+    {
+        switch (kind) {
+        case COUNT: return Long.class;
+        case AVG:   return Double.class;
+        case SUM:   return (dom == Double.class || dom == Float.class) ? Double.class : Long.class;
+        default:    return dom;
+        } // switch
+    } // resultDomain
+
+    /************************************************************************************
+     * Determine whether two aggregate specifications are equal.
+     *
+     * @param o  the other specification
+     * @return  true if equal, false otherwise
+     */
+    public boolean equals (Object o)
+    {
+        if (! (o instanceof Aggregate)) return false;
+        Aggregate a = (Aggregate) o;
+        return kind == a.kind && java.util.Objects.equals (attr, a.attr);
+    } // equals
+
+    /************************************************************************************
+     * Compute a hash code consistent with equals.
+     *
+     * @return  an integer hash code value
+     */
+    public int hashCode ()
+    {
+        return 31 * kind.hashCode () + (attr == null ? 0 : attr.hashCode ());
+    } // hashCode
+
+    /************************************************************************************
+     * Convert the aggregate specification to a string.
+     *
+     * @return  the string representation (e.g., "avg(length)")
+     */
+    public String toString ()
+    {
+        return kind.name ().toLowerCase () + "(" + (attr == null ? "" : attr) + ")";
+    } // toString
+
+} // Aggregate class
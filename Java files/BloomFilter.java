@@ -0,0 +1,94 @@
+/****************************************************************************************
+ * @file  BloomFilter.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.Serializable;
+
+/****************************************************************************************
+ * The BloomFilter class provides a Bloom filter over the values of given columns of
+ * tuples.  It answers "definitely absent" or "possibly present" from a few bits, so a
+ * small summary can rule out a value without scanning the data (e.g., a block of rows
+ * in a zone map).  The number of bits and hash functions are derived from the expected
+ * number of entries and the desired false positive rate; the k bit positions come from
+ * double hashing of a 64 bit hash.
+ */
+class BloomFilter
+      implements Serializable
+{
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+
+    /** The bit array. */
+    private final long [] bits;
+    /** Number of bits (a power of two). */
+    private final long m;
+    /** Number of hash functions. */
+    private final int k;
+
+    /************************************************************************************
+     * Construct an empty filter sized for the expected number of entries.
+     * @param expected  the expected number of entries
+     * @param fpp       the desired false positive probability
+     */
+    BloomFilter (long expected, double fpp)
+    {
+        double n   = Math.max (expected, 1);
+        double ln2 = Math.log (2);
+        long bitsNeeded = (long) Math.ceil (-n * Math.log (fpp) / (ln2 * ln2));
+        m    = Long.highestOneBit (Math.max (bitsNeeded, 64) - 1) << 1;
+        k    = Math.max (1, (int) Math.round (m / n * ln2));
+        bits = new long [(int) (m >>> 6)];
+    } // constructor
+
+    /************************************************************************************
+     * Add an entry given its hash (see hash).
+     *
+     * @param h  the 64 bit hash of the entry
+     */
+    void add (long h)
+    {
+        long h1 = h, h2 = (h >>> 32) | 1;
+        for (int i = 0; i < k; i++) {
+            long b = (h1 + i * h2) & (m - 1);
+            bits [(int) (b >>> 6)] |= 1L << b;
+        } // for
+    } // add
+
+    /************************************************************************************
+     * Return whether an entry with the given hash may have been added.
+     *
+     * @param h  the 64 bit hash of the entry
+     * @return  false if the entry was definitely not added, true otherwise
+     */
+    boolean mightContain (long h)
+    {
+        long h1 = h, h2 = (h >>> 32) | 1;
+        for (int i = 0; i < k; i++) {
+            long b = (h1 + i * h2) & (m - 1);
+            if ((bits [(int) (b >>> 6)] & (1L << b)) == 0) return false;
+        } // for
+        return true;
+    } // mightContain
+
+    /************************************************************************************
+     * Compute a 64 bit hash of the values of tuple t at cols.
+     *
+     * @param t     the tuple
+     * @param cols  the column positions
+     * @return  the hash
+     */
+    static long hash (Comparable [] t, int [] cols)
+    {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int c : cols) {
+            h ^= (t [c] == null) ? 0 : t [c].hashCode ();
+            h *= 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        } // for
+        h *= 0x94D049BB133111EBL;
+        return h ^ (h >>> 29);
+    } // hash
+
+} // BloomFilter class
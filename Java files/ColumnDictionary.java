@@ -0,0 +1,108 @@
+/****************************************************************************************
+ * @file  ColumnDictionary.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+/****************************************************************************************
+ * The ColumnDictionary class provides dictionary encoding for a STRING domain column
+ * (String or Character).  Each distinct value is assigned a dense int code and is
+ * stored exactly once, so every tuple holding that value shares one canonical instance.
+ * Two canonical values are equal exactly when their codes (and references) are equal.
+ * A dictionary is shared by a table and the tables derived from it, which may add
+ * values to it while others read it, so its methods are synchronized.
+ */
+public class ColumnDictionary
+       implements Serializable
+{
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+    /** Distinct values in code order (code -> value). */
+    private final List <Comparable> values = new ArrayList <> ();
+    /** Reverse mapping (value -> code). */
+    private final Map <Comparable, Integer> codes = new HashMap <> ();
+
+    /************************************************************************************
+     * Encode the given value, adding it to the dictionary if it is new.
+     *
+     * @param v  the value to encode
+     * @return  the code assigned to the value
+     */
+    public synchronized int encode (Comparable v)
+    {
+        Integer c = codes.get (v);
+        if (c == null) {
+            c = values.size ();
+            values.add (v);
+            codes.put (v, c);
+        } // if
+        return c;
+    } // encode
+
+    /************************************************************************************
+     * Return the code for the given value without adding it.
+     *
+     * @param v  the value to look up
+     * @return  the code of the value, or -1 if it is not in the dictionary
+     */
+    public synchronized int code (Comparable v)
+    {
+        Integer c = codes.get (v);
+        return (c == null) ? -1 : c;
+    } // code
+
+    /************************************************************************************
+     * Decode the given code back to its value.
+     *
+     * @param c  the code to decode
+     * @return  the canonical value for the code
+     */
+    public synchronized Comparable decode (int c)
+    {
+        return values.get (c);
+    } // decode
+
+    /************************************************************************************
+     * Return the canonical instance for the given value, adding it if it is new.
+     * Tuples store canonical instances so that equal values share storage.
+     *
+     * @param v  the value to intern
+     * @return  the canonical instance equal to v
+     */
+    public synchronized Comparable intern (Comparable v)
+    {
+        return values.get (encode (v));
+    } // intern
+
+    /************************************************************************************
+     * Return the number of distinct values in the dictionary.
+     *
+     * @return  the dictionary size
+     */
+    public synchronized int size ()
+    {
+        return values.size ();
+    } // size
+
+    /************************************************************************************
+     * Build a translation from the codes of this dictionary to the codes of dict2, so
+     * that columns encoded by different dictionaries can be compared code to code.
+     *
+     * @param dict2  the other dictionary
+     * @return  an array mapping each code of this to a code of dict2 (-1 if absent)
+     */
+    public int [] translate (ColumnDictionary dict2)
+    {
+        Comparable [] vals;
+        synchronized (this) {                                            // copy, so both locks
+            vals = values.toArray (new Comparable [0]);                  // are never held at once
+        } // synchronized
+        int [] xlate = new int [vals.length];
+        for (int c = 0; c < xlate.length; c++) xlate [c] = dict2.code (vals [c]);
+        return xlate;
+    } // translate
+
+} // ColumnDictionary class
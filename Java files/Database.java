@@ -0,0 +1,293 @@
+/****************************************************************************************
+ * @file  Database.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The Database class is a catalog of the tables saved in the storage directory.
+ * Opening it discovers the tables and starts loading all of them in parallel, the
+ * cheapest first, so a cold start takes about as long as the slowest table (or the
+ * total divided by the number of loader threads) rather than the sum of all.
+ * -  get waits only for the table asked for, so queries can start on each table as
+ * -  soon as it is loaded while the others are still loading.
+ * -  Segment files (.dbc) are loaded lazily (see Table.loadMapped), serialized files
+ * -  (.dbf) in full; when a table has both, the newer file is used.
+ * -  Partitioned tables (.dbp) are loaded with their partitions (see PartitionedTable).
+ * -  Once a table is loaded, its index is verified on the loader thread and rebuilt if
+ * -  it does not match the tuples (see Table.verifyIndex), before the table is handed
+ * -  out, so the check never runs concurrently with queries or inserts.
+ */
+public class Database
+       implements Closeable
+{
+    /** Filename extensions of the files in the storage directory. */
+    private static final String DBF = ".dbf", DBC = Table.SEG, DBP = ".dbp";
+
+    /** The tables being loaded or loaded, by name. */
+    private final Map <String, CompletableFuture <Table>> tables = new ConcurrentSkipListMap <> ();
+    /** The partitioned tables being loaded or loaded, by name. */
+    private final Map <String, CompletableFuture <PartitionedTable>> partitioned = new ConcurrentSkipListMap <> ();
+    /** The results of the index checks, by table name (true if the index was valid). */
+    private final Map <String, Boolean> checks = new ConcurrentHashMap <> ();
+    /** The time taken to load each table in milliseconds. */
+    private final Map <String, Long> loadTime = new ConcurrentHashMap <> ();
+    /** The threads loading the tables and checking their indexes. */
+    private final ExecutorService loader;
+
+    /************************************************************************************
+     * Construct a catalog of the tables in the storage directory and start loading them.
+     * @param threads  the number of tables loaded at the same time
+     */
+    private Database (int threads)
+    {
+        loader = Executors.newFixedThreadPool (threads, r -> {
+            Thread t = new Thread (r, "Database-loader");
+            t.setDaemon (true);
+            return t;
+        });
+        discover ();
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Public Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Open the database in the storage directory, loading its tables in parallel.
+     *
+     * #usage Database db = Database.open ();
+     *        Table movie = db.get ("movie");
+     *
+     * @return  the database
+     */
+    public static Database open ()
+    {
+        return new Database (Math.max (4, 2 * Runtime.getRuntime ().availableProcessors ()));
+    } // open
+
+    /************************************************************************************
+     * Return the table with the given name, waiting for it (only) to finish loading.
+     *
+     * @param name  the table name
+     * @return  the table, or null if there is no such table or it failed to load
+     */
+    public Table get (String name)
+    {
+        CompletableFuture <Table> f = tables.get (name);
+        return (f == null) ? null : f.exceptionally (ex -> null).join ();
+    } // get
+
+    /************************************************************************************
+     * Return the partitioned table with the given name, waiting for it to load.
+     *
+     * @param name  the table name
+     * @return  the partitioned table, or null if there is no such table
+     */
+    public PartitionedTable getPartitioned (String name)
+    {
+        CompletableFuture <PartitionedTable> f = partitioned.get (name);
+        return (f == null) ? null : f.exceptionally (ex -> null).join ();
+    } // getPartitioned
+
+    /************************************************************************************
+     * Return whether the table with the given name has finished loading.
+     *
+     * @param name  the table name
+     * @return  whether the table is ready
+     */
+    public boolean isReady (String name)
+    {
+        CompletableFuture <Table> f = tables.get (name);
+        return f != null && f.isDone ();
+    } // isReady
+
+    /************************************************************************************
+     * Return the names of the (unpartitioned) tables in the catalog, in name order.
+     *
+     * @return  the table names
+     */
+    public Set <String> getNames ()
+    {
+        return Collections.unmodifiableSet (tables.keySet ());
+    } // getNames
+
+    /************************************************************************************
+     * Return the names of the partitioned tables in the catalog, in name order.
+     *
+     * @return  the partitioned table names
+     */
+    public Set <String> getPartitionedNames ()
+    {
+        return Collections.unmodifiableSet (partitioned.keySet ());
+    } // getPartitionedNames
+
+    /************************************************************************************
+     * Add a new table to the catalog (e.g., one just created), replacing any table
+     * with the same name.
+     *
+     * @param table  the table to add
+     */
+    public void add (Table table)
+    {
+        tables.put (table.getName (), CompletableFuture.completedFuture (table));
+    } // add
+
+    /************************************************************************************
+     * Wait for every table to finish loading (including its index check).
+     */
+    public void await ()
+    {
+        CompletableFuture.allOf (tables.values ().toArray (new CompletableFuture [0])).exceptionally (ex -> null).join ();
+        CompletableFuture.allOf (partitioned.values ().toArray (new CompletableFuture [0])).exceptionally (ex -> null).join ();
+    } // await
+
+    /************************************************************************************
+     * Save every loaded table in parallel, each in the format it was loaded from.
+     */
+    public void save ()
+    {
+        await ();
+        tables.keySet ().parallelStream ().forEach (n -> {
+            Table t = get (n);
+            if (t == null) return;
+            if (newest (n).endsWith (DBC)) t.saveCompressed ();
+            else                           t.save ();
+        });
+        partitioned.keySet ().parallelStream ().map (this::getPartitioned)
+                                               .filter (Objects::nonNull).forEach (PartitionedTable::save);
+    } // save
+
+    /************************************************************************************
+     * Print the state of each table: its size, load time and index check.
+     */
+    public void printStatus ()
+    {
+        out.println ("\n Database " + Table.DIR);
+        for (String n : tables.keySet ()) {
+            CompletableFuture <Table> f = tables.get (n);
+            String state = ! f.isDone () ? "loading" : f.handle ((t, ex) -> {
+                if (t == null) return "failed to load";
+                Boolean valid = checks.get (n);
+                return t.size () + " tuples, loaded in " + loadTime.getOrDefault (n, 0L) + " ms, index "
+                     + (valid == null ? "not checked" : valid ? "valid" : "rebuilt");
+            }).join ();
+            out.printf ("  %-20s %s%n", n, state);
+        } // for
+        for (String n : partitioned.keySet ()) {
+            CompletableFuture <PartitionedTable> f = partitioned.get (n);
+            String state = ! f.isDone () ? "partitioned, loading"
+                         : f.handle ((t, ex) -> t == null ? "partitioned, failed to load" : "partitioned, loaded").join ();
+            out.printf ("  %-20s %s%n", n, state);
+        } // for
+    } // printStatus
+
+    /************************************************************************************
+     * Stop loading and checking tables.
+     */
+    public void close ()
+    {
+        loader.shutdownNow ();
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Discover the tables in the storage directory and start loading each of them.
+     * Partitions of partitioned tables are not listed as tables of their own.
+     */
+    private void discover ()
+    {
+        File [] files = new File (Table.DIR).listFiles ();
+        if (files == null) return;
+
+        Set <String> parts = new HashSet <> ();
+        for (File f : files) {
+            String fn = f.getName ();
+            if (! fn.endsWith (DBP)) continue;
+            String name = fn.substring (0, fn.length () - DBP.length ());
+            partitioned.put (name, CompletableFuture.supplyAsync (() -> PartitionedTable.load (name), loader));
+            for (File g : files) {
+                String s = stem (g.getName ());
+                if (s.startsWith (name + "_p") && s.substring (name.length () + 2).matches ("\\d+")) parts.add (s);
+            } // for
+        } // for
+
+        Set <String> stems = new TreeSet <> ();
+        for (File f : files) {
+            String fn = f.getName ();
+            if ((fn.endsWith (DBF) || fn.endsWith (DBC)) && ! parts.contains (stem (fn))) stems.add (stem (fn));
+        } // for
+
+        List <String> names = new ArrayList <> (stems);                  // cheapest loads first
+        names.sort (Comparator.comparingLong (Database::cost));
+        for (String name : names) {
+            tables.put (name, CompletableFuture.supplyAsync (() -> load (name), loader));
+        } // for
+    } // discover
+
+    /************************************************************************************
+     * Load a table from its newest file, timing the load, and check its index.  The
+     * check runs here, before the table is published, since it may replace the index.
+     *
+     * @param name  the table name
+     * @return  the table (null if it failed to load)
+     */
+    private Table load (String name)
+    {
+        long  t0  = System.nanoTime ();
+        Table tab = newest (name).endsWith (DBC) ? Table.loadMapped (name) : Table.load (name);
+        loadTime.put (name, (System.nanoTime () - t0) / 1_000_000);
+        if (tab != null) checks.put (name, tab.verifyIndex ());
+        return tab;
+    } // load
+
+    /************************************************************************************
+     * Return the newest of the table's serialized and segment files.
+     *
+     * @param name  the table name
+     * @return  the file name
+     */
+    private static String newest (String name)
+    {
+        File dbf = new File (Table.DIR + name + DBF), dbc = new File (Table.DIR + name + DBC);
+        if (! dbc.exists ()) return dbf.getName ();
+        if (! dbf.exists ()) return dbc.getName ();
+        return (dbc.lastModified () >= dbf.lastModified ()) ? dbc.getName () : dbf.getName ();
+    } // newest
+
+    /************************************************************************************
+     * Estimate the cost of loading a table, so cheap tables are loaded (and ready for
+     * queries) first: a mapped load reads only the header and directory, so it costs
+     * next to nothing, while a full load costs about the size of the file.
+     *
+     * @param name  the table name
+     * @return  the estimated cost
+     */
+    private static long cost (String name)
+    {
+        String fn = newest (name);
+        return fn.endsWith (DBC) ? 0L : new File (Table.DIR + fn).length ();
+    } // cost
+
+    /************************************************************************************
+     * Return a file name without its extension.
+     *
+     * @param fn  the file name
+     * @return  the stem
+     */
+    private static String stem (String fn)
+    {
+        int dot = fn.lastIndexOf ('.');
+        return (dot < 0) ? fn : fn.substring (0, dot);
+    } // stem
+
+} // Database class
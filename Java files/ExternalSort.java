@@ -0,0 +1,191 @@
+/****************************************************************************************
+ * @file  ExternalSort.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The ExternalSort class implements an external merge sort.  The input is cut into runs
+ * of at most budget tuples, each sorted in memory and spilled to the storage directory,
+ * and the runs are merged k ways with a loser tree.  When there are more runs than
+ * FANIN, they are merged in passes so that at most FANIN runs are open at a time.
+ * Input that fits within the budget is sorted in memory without spilling.  The sorted
+ * tuples are returned as a stream over the final merge, so the sort holds at most
+ * budget tuples (plus one per run) in memory; whether to collect them is up to the
+ * caller.  Spilling only saves memory when the input is not already held in memory
+ * (e.g., it is decoded from a segment file or off-heap store as it is read).
+ */
+class ExternalSort
+{
+    /** Maximum number of runs merged at once. */
+    private static final int FANIN = 64;
+
+    /************************************************************************************
+     * The Sorted class streams the sorted tuples, deleting the spilled runs once the
+     * last tuple has been read or the stream is closed.
+     */
+    static class Sorted
+           implements Iterator <Comparable []>, Closeable
+    {
+        /** The merged (or in-memory sorted) tuples. */
+        private final Iterator <Comparable []> it;
+        /** The runs being merged (empty if nothing was spilled). */
+        private final List <SpillFile> runs;
+        /** Whether any tuples were spilled (and so come back as copies). */
+        private final boolean spilled;
+
+        /********************************************************************************
+         * Construct a stream over the sorted tuples.
+         * @param _it    the sorted tuples
+         * @param _runs  the runs being merged
+         */
+        private Sorted (Iterator <Comparable []> _it, List <SpillFile> _runs)
+        {
+            it      = _it;
+            runs    = _runs;
+            spilled = ! _runs.isEmpty ();
+        } // constructor
+
+        /********************************************************************************
+         * Return whether there are more tuples, deleting the runs after the last.
+         * @return  whether next has a tuple to return
+         */
+        public boolean hasNext ()
+        {
+            if (it.hasNext ()) return true;
+            close ();
+            return false;
+        } // hasNext
+
+        /********************************************************************************
+         * Return the next tuple in order.
+         * @return  the next tuple
+         */
+        public Comparable [] next ()
+        {
+            return it.next ();
+        } // next
+
+        /********************************************************************************
+         * Return whether any tuples were spilled, in which case they are copies of the
+         * input tuples.
+         * @return  whether the sort spilled
+         */
+        boolean spilled ()
+        {
+            return spilled;
+        } // spilled
+
+        /********************************************************************************
+         * Close and delete the runs.
+         */
+        public void close ()
+        {
+            try {
+                for (SpillFile sf : runs) sf.close ();
+                runs.clear ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+        } // close
+    } // Sorted class
+
+    /************************************************************************************
+     * Sort the input tuples.
+     *
+     * @param in      the input tuples
+     * @param cmp     the tuple comparator
+     * @param budget  the maximum number of tuples held in memory
+     * @return  a stream of the sorted tuples, to be drained or closed
+     */
+    static Sorted sort (Iterator <Comparable []> in, Comparator <Comparable []> cmp, int budget)
+    {
+        List <SpillFile> runs = new ArrayList <> ();
+        boolean          done = false;
+        try {
+            List <Comparable []> buf = new ArrayList <> ();
+            while (in.hasNext ()) {
+                buf.add (in.next ());
+                if (buf.size () >= budget && in.hasNext ()) {
+                    runs.add (spillRun (buf, cmp));
+                    buf = new ArrayList <> ();
+                } // if
+            } // while
+            if (runs.isEmpty ()) {
+                buf.sort (cmp);
+                done = true;
+                return new Sorted (buf.iterator (), runs);
+            } // if
+            runs.add (spillRun (buf, cmp));
+            buf = null;
+
+            while (runs.size () > FANIN) {
+                List <SpillFile> merged = new ArrayList <> ();
+                for (int i = 0; i < runs.size (); i += FANIN) {
+                    List <SpillFile> group = runs.subList (i, Math.min (i + FANIN, runs.size ()));
+                    merged.add (spill (merge (group, cmp)));
+                    for (SpillFile sf : group) sf.close ();
+                } // for
+                runs = merged;
+            } // while
+
+            Sorted sorted = new Sorted (merge (runs, cmp), runs);
+            done = true;
+            return sorted;
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } finally {
+            if (! done) {
+                for (SpillFile sf : runs) {
+                    try { sf.close (); } catch (IOException ex) { /* temp file, ignore */ }
+                } // for
+            } // if
+        } // try
+    } // sort
+
+    /************************************************************************************
+     * Sort an in-memory run and write it to a new spill file.
+     *
+     * @param buf  the run
+     * @param cmp  the tuple comparator
+     * @return  the spill file holding the sorted run
+     */
+    private static SpillFile spillRun (List <Comparable []> buf, Comparator <Comparable []> cmp)
+        throws IOException
+    {
+        buf.sort (cmp);
+        return spill (buf.iterator ());
+    } // spillRun
+
+    /************************************************************************************
+     * Write tuples to a new spill file.
+     *
+     * @param it  the tuples to write
+     * @return  the spill file holding the tuples
+     */
+    private static SpillFile spill (Iterator <Comparable []> it)
+        throws IOException
+    {
+        SpillFile sf = new SpillFile ();
+        while (it.hasNext ()) sf.add (it.next ());
+        return sf;
+    } // spill
+
+    /************************************************************************************
+     * Merge the given sorted runs.
+     *
+     * @param runs  the sorted runs
+     * @param cmp   the tuple comparator
+     * @return  an iterator over the merged tuples
+     */
+    private static Iterator <Comparable []> merge (List <SpillFile> runs, Comparator <Comparable []> cmp)
+    {
+        List <Iterator <Comparable []>> its = new ArrayList <> ();
+        for (SpillFile sf : runs) its.add (sf.iterator ());
+        return new LoserTree (its, cmp);
+    } // merge
+
+} // ExternalSort class
@@ -0,0 +1,500 @@
+/****************************************************************************************
+ * @file  HashAggregator.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+/****************************************************************************************
+ * The HashAggregator class implements hash aggregation for Table.groupBy.  Groups are
+ * found through an open-addressing (linear probing) hash table of group numbers, and
+ * each aggregate keeps its running state in primitive arrays indexed by group number
+ * (long for INTEGER domains, double for REAL domains).
+ * -  Large inputs are split into chunks aggregated in parallel, then merged.
+ * -  If the groups outgrow the memory budget, the input is hash-partitioned on the
+ * -  grouping attributes into spill files and each partition is aggregated on its own.
+ */
+class HashAggregator
+{
+    /** Minimum number of tuples before aggregating in parallel. */
+    private static final int PARALLEL_MIN = 1 << 16;
+    /** Number of partitions created on each spill. */
+    private static final int FANOUT = 16;
+    /** Recursion depth after which a partition is aggregated regardless of size. */
+    private static final int MAX_DEPTH = 6;
+
+    /** Column positions of the grouping attributes. */
+    private final int [] groupCols;
+    /** The aggregate specifications. */
+    private final Aggregate [] aggs;
+    /** Column position aggregated by each aggregate (-1 for count ()). */
+    private final int [] aggCols;
+    /** Domain of the column aggregated by each aggregate. */
+    private final Class [] aggDoms;
+    /** Maximum number of groups (0 for no limit). */
+    private final int budget;
+
+    /** Open-addressing table of group number + 1 (0 marks an empty slot). */
+    private int [] slot = new int [64];
+    /** Hash of each group's key. */
+    private int [] hash = new int [32];
+    /** Grouping attribute values of each group. */
+    private Comparable [][] keys = new Comparable [32][];
+    /** Number of groups. */
+    private int groups = 0;
+
+    /** Per aggregate, number of non-null values (tuples for count ()) in each group. */
+    private long [][] n;
+    /** Per aggregate, INTEGER sum or extreme in each group. */
+    private long [][] lv;
+    /** Per aggregate, REAL sum or extreme in each group. */
+    private double [][] dv;
+    /** Per aggregate, extreme of other (e.g., STRING) domains in each group. */
+    private Comparable [][] ov;
+
+    /************************************************************************************
+     * Construct an empty aggregator.
+     * @param _groupCols  the column positions of the grouping attributes
+     * @param _aggs       the aggregate specifications
+     * @param _aggCols    the column position aggregated by each aggregate (-1 for count ())
+     * @param _aggDoms    the domain of the column aggregated by each aggregate
+     * @param _budget     the maximum number of groups (0 for no limit)
+     */
+    HashAggregator (int [] _groupCols, Aggregate [] _aggs, int [] _aggCols, Class [] _aggDoms, int _budget)
+    {
+        groupCols = _groupCols;
+        aggs      = _aggs;
+        aggCols   = _aggCols;
+        aggDoms   = _aggDoms;
+        budget    = _budget;
+        n  = new long [aggs.length][32];
+        lv = new long [aggs.length][];
+        dv = new double [aggs.length][];
+        ov = new Comparable [aggs.length][];
+        for (int a = 0; a < aggs.length; a++) {
+            if      (integral (aggDoms [a])) lv [a] = new long [32];
+            else if (real (aggDoms [a]))     dv [a] = new double [32];
+            else                             ov [a] = new Comparable [32];
+        } // for
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Driver
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Aggregate the input, returning one tuple per group: the grouping attribute values
+     * followed by the aggregate values.
+     *
+     * @param in         the input tuples
+     * @param groupCols  the column positions of the grouping attributes
+     * @param aggs       the aggregate specifications
+     * @param aggCols    the column position aggregated by each aggregate (-1 for count ())
+     * @param aggDoms    the domain of the column aggregated by each aggregate
+     * @param budget     the maximum number of groups held in memory
+     * @return  the list of result tuples
+     */
+    static List <Comparable []> aggregate (List <Comparable []> in, int [] groupCols, Aggregate [] aggs,
+                                           int [] aggCols, Class [] aggDoms, int budget)
+    {
+        List <Comparable []> result = new ArrayList <> ();
+        try {
+            if (in.size () >= PARALLEL_MIN && in instanceof RandomAccess) {
+                HashAggregator agg = parallel (in, groupCols, aggs, aggCols, aggDoms, budget);
+                if (agg != null) {
+                    agg.results (result);
+                    return result;
+                } // if
+            } // if
+            aggregate (in, groupCols, aggs, aggCols, aggDoms, budget, 0, result);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+        return result;
+    } // aggregate
+
+    /************************************************************************************
+     * Aggregate chunks of the input in parallel and merge the partial aggregates.
+     *
+     * @param in         the input tuples
+     * @param groupCols  the column positions of the grouping attributes
+     * @param aggs       the aggregate specifications
+     * @param aggCols    the column position aggregated by each aggregate (-1 for count ())
+     * @param aggDoms    the domain of the column aggregated by each aggregate
+     * @param budget     the maximum number of groups held in memory
+     * @return  the merged aggregator, or null if the groups outgrew the budget
+     */
+    private static HashAggregator parallel (List <Comparable []> in, int [] groupCols, Aggregate [] aggs,
+                                            int [] aggCols, Class [] aggDoms, int budget)
+    {
+        int p     = Runtime.getRuntime ().availableProcessors ();
+        int chunk = (in.size () + p - 1) / p;
+
+        List <HashAggregator> partial = IntStream.range (0, p).parallel ().mapToObj (c -> {
+            HashAggregator agg = new HashAggregator (groupCols, aggs, aggCols, aggDoms, budget);
+            for (int i = c * chunk; i < Math.min (in.size (), (c + 1) * chunk); i++) {
+                if (! agg.add (in.get (i))) return null;
+            } // for
+            return agg;
+        }).collect (Collectors.toList ());
+
+        HashAggregator total = new HashAggregator (identity (groupCols.length), aggs, aggCols, aggDoms, budget);
+        for (HashAggregator agg : partial) {
+            if (agg == null || ! total.merge (agg)) return null;
+        } // for
+        return total;
+    } // parallel
+
+    /************************************************************************************
+     * Aggregate the input sequentially, spilling hash partitions if the groups outgrow
+     * the budget.  The input is scanned a second time when it has to be partitioned.
+     *
+     * @param in         the input tuples
+     * @param groupCols  the column positions of the grouping attributes
+     * @param aggs       the aggregate specifications
+     * @param aggCols    the column position aggregated by each aggregate (-1 for count ())
+     * @param aggDoms    the domain of the column aggregated by each aggregate
+     * @param budget     the maximum number of groups held in memory
+     * @param depth      the partitioning depth (varies the partitioning hash)
+     * @param result     the list receiving the result tuples
+     */
+    private static void aggregate (Iterable <Comparable []> in, int [] groupCols, Aggregate [] aggs,
+                                   int [] aggCols, Class [] aggDoms, int budget, int depth,
+                                   List <Comparable []> result)
+        throws IOException
+    {
+        HashAggregator agg = new HashAggregator (groupCols, aggs, aggCols, aggDoms,
+                                                 depth < MAX_DEPTH ? budget : 0);
+        boolean fits = true;
+        Iterator <Comparable []> it = in.iterator ();
+        try {
+            while (fits && it.hasNext ()) fits = agg.add (it.next ());
+        } finally {
+            if (it instanceof Closeable) ((Closeable) it).close ();     // first pass may stop early
+        } // try
+        if (fits) {
+            agg.results (result);
+            return;
+        } // if
+
+        agg = null;
+        SpillFile [] part = new SpillFile [FANOUT];
+        try {
+            for (int p = 0; p < FANOUT; p++) part [p] = new SpillFile ();
+            for (Comparable [] t : in) {
+                int h = Integer.rotateLeft (hashOf (t, groupCols) * 0x9E3779B9, 4 * depth);
+                part [h >>> 28].add (t);
+            } // for
+            for (SpillFile sf : part) {
+                aggregate (sf, groupCols, aggs, aggCols, aggDoms, budget, depth + 1, result);
+            } // for
+        } finally {
+            for (SpillFile sf : part) if (sf != null) sf.close ();
+        } // try
+    } // aggregate
+
+    //----------------------------------------------------------------------------------
+    // Hash table
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Add tuple t to its group.
+     *
+     * @param t  the tuple
+     * @return  false if t starts a new group beyond the budget, true otherwise
+     */
+    boolean add (Comparable [] t)
+    {
+        int g = find (t, groupCols);
+        if (g < 0) return false;
+
+        for (int a = 0; a < aggs.length; a++) {
+            if (aggCols [a] < 0) {
+                n [a][g]++;
+                continue;
+            } // if
+            Comparable v = t [aggCols [a]];
+            if (v == null) continue;
+            if (aggs [a].kind == Aggregate.Kind.COUNT) {
+                n [a][g]++;
+            } else if (lv [a] != null) {
+                long x = ((Number) v).longValue ();
+                lv [a][g] = combine (aggs [a].kind, n [a][g]++ == 0, lv [a][g], x);
+            } else if (dv [a] != null) {
+                double x = ((Number) v).doubleValue ();
+                dv [a][g] = combine (aggs [a].kind, n [a][g]++ == 0, dv [a][g], x);
+            } else {
+                ov [a][g] = combine (aggs [a].kind, n [a][g]++ == 0, ov [a][g], v);
+            } // if
+        } // for
+        return true;
+    } // add
+
+    /************************************************************************************
+     * Merge the groups of another aggregator (over the same aggregates) into this one.
+     *
+     * @param other  the other aggregator
+     * @return  false if the merged groups outgrow the budget, true otherwise
+     */
+    boolean merge (HashAggregator other)
+    {
+        int [] cols = identity (other.groupCols.length);
+        for (int h = 0; h < other.groups; h++) {
+            int g = find (other.keys [h], cols);
+            if (g < 0) return false;
+
+            for (int a = 0; a < aggs.length; a++) {
+                long m = other.n [a][h];
+                if (m == 0) continue;
+                boolean first = n [a][g] == 0;
+                Aggregate.Kind k = (aggs [a].kind == Aggregate.Kind.AVG) ? Aggregate.Kind.SUM : aggs [a].kind;
+                if      (k == Aggregate.Kind.COUNT) { /* counts only */ }
+                else if (lv [a] != null) lv [a][g] = combine (k, first, lv [a][g], other.lv [a][h]);
+                else if (dv [a] != null) dv [a][g] = combine (k, first, dv [a][g], other.dv [a][h]);
+                else                     ov [a][g] = combine (k, first, ov [a][g], other.ov [a][h]);
+                n [a][g] += m;
+            } // for
+        } // for
+        return true;
+    } // merge
+
+    /************************************************************************************
+     * Find (or create) the group whose key equals the values of tuple t at cols.
+     *
+     * @param t     the tuple
+     * @param cols  the column positions of the key values in t
+     * @return  the group number, or -1 if a new group would exceed the budget
+     */
+    private int find (Comparable [] t, int [] cols)
+    {
+        int h    = hashOf (t, cols);
+        int mask = slot.length - 1;
+        int i    = mix (h) & mask;
+        for ( ; slot [i] != 0; i = (i + 1) & mask) {
+            int g = slot [i] - 1;
+            if (hash [g] == h && sameKey (keys [g], t, cols)) return g;
+        } // for
+
+        if (budget > 0 && groups >= budget) return -1;
+        if (groups == keys.length) grow ();
+        int g = groups++;
+        Comparable [] k = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) k [j] = t [cols [j]];
+        keys [g] = k;
+        hash [g] = h;
+        slot [i] = g + 1;
+        if (2 * groups > slot.length) rehash ();
+        return g;
+    } // find
+
+    /************************************************************************************
+     * Double the capacity of the per-group arrays.
+     */
+    private void grow ()
+    {
+        int cap = 2 * keys.length;
+        keys = Arrays.copyOf (keys, cap);
+        hash = Arrays.copyOf (hash, cap);
+        for (int a = 0; a < aggs.length; a++) {
+            n [a] = Arrays.copyOf (n [a], cap);
+            if (lv [a] != null) lv [a] = Arrays.copyOf (lv [a], cap);
+            if (dv [a] != null) dv [a] = Arrays.copyOf (dv [a], cap);
+            if (ov [a] != null) ov [a] = Arrays.copyOf (ov [a], cap);
+        } // for
+    } // grow
+
+    /************************************************************************************
+     * Double the size of the open-addressing table and reinsert the groups.
+     */
+    private void rehash ()
+    {
+        slot = new int [2 * slot.length];
+        int mask = slot.length - 1;
+        for (int g = 0; g < groups; g++) {
+            int i = mix (hash [g]) & mask;
+            while (slot [i] != 0) i = (i + 1) & mask;
+            slot [i] = g + 1;
+        } // for
+    } // rehash
+
+    /************************************************************************************
+     * Append one result tuple per group to the result list.
+     *
+     * @param result  the list receiving the result tuples
+     */
+    void results (List <Comparable []> result)
+    {
+        int k = (groups == 0) ? 0 : keys [0].length;
+        for (int g = 0; g < groups; g++) {
+            Comparable [] t = Arrays.copyOf (keys [g], k + aggs.length);
+            for (int a = 0; a < aggs.length; a++) t [k + a] = value (a, g);
+            result.add (t);
+        } // for
+    } // results
+
+    /************************************************************************************
+     * Return the final value of aggregate a for group g.
+     *
+     * @param a  the aggregate
+     * @param g  the group
+     * @return  the aggregate value
+     */
+    private Comparable value (int a, int g)
+    {
+        long m = n [a][g];
+        if (aggs [a].kind == Aggregate.Kind.COUNT) return m;
+        if (m == 0) return null;
+
+        Class dom = aggDoms [a];
+        switch (aggs [a].kind) {
+        case SUM: return (lv [a] != null) ? (Comparable) lv [a][g] : (Comparable) dv [a][g];
+        case AVG: return ((lv [a] != null) ? (double) lv [a][g] : dv [a][g]) / m;
+        default:
+            if (ov [a] != null)       return ov [a][g];
+            if (dom == Integer.class) return (int) lv [a][g];
+            if (dom == Short.class)   return (short) lv [a][g];
+            if (dom == Byte.class)    return (byte) lv [a][g];
+            if (dom == Long.class)    return lv [a][g];
+            if (dom == Float.class)   return (float) dv [a][g];
+            return dv [a][g];
+        } // switch
+    } // value
+
+    //----------------------------------------------------------------------------------
+    // Helpers
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Combine an INTEGER accumulator with a value.
+     *
+     * @param k      the aggregate function
+     * @param first  whether x is the group's first value
+     * @param acc    the accumulator
+     * @param x      the value
+     * @return  the new accumulator
+     */
+    private static long combine (Aggregate.Kind k, boolean first, long acc, long x)
+    {
+        if (first) return x;
+        switch (k) {
+        case MIN: return Math.min (acc, x);
+        case MAX: return Math.max (acc, x);
+        default:  return acc + x;
+        } // switch
+    } // combine
+
+    /************************************************************************************
+     * Combine a REAL accumulator with a value.
+     *
+     * @param k      the aggregate function
+     * @param first  whether x is the group's first value
+     * @param acc    the accumulator
+     * @param x      the value
+     * @return  the new accumulator
+     */
+    private static double combine (Aggregate.Kind k, boolean first, double acc, double x)
+    {
+        if (first) return x;
+        switch (k) {
+        case MIN: return Math.min (acc, x);
+        case MAX: return Math.max (acc, x);
+        default:  return acc + x;
+        } // switch
+    } // combine
+
+    /************************************************************************************
+     * Combine a min/max accumulator of another domain with a value.
+     *
+     * @param k      the aggregate function (MIN or MAX)
+     * @param first  whether x is the group's first value
+     * @param acc    the accumulator
+     * @param x      the value
+     * @return  the new accumulator
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparable combine (Aggregate.Kind k, boolean first, Comparable acc, Comparable x)
+    {
+        if (first) return x;
+        int r = x.compareTo (acc);
+        return (k == Aggregate.Kind.MIN ? r < 0 : r > 0) ? x : acc;
+    } // combine
+
+    /************************************************************************************
+     * Hash the values of tuple t at cols.
+     *
+     * @param t     the tuple
+     * @param cols  the column positions
+     * @return  the hash code
+     */
+    private static int hashOf (Comparable [] t, int [] cols)
+    {
+        int h = 1;
+        for (int c : cols) h = 31 * h + (t [c] == null ? 0 : t [c].hashCode ());
+        return h;
+    } // hashOf
+
+    /************************************************************************************
+     * Spread the bits of a hash code for use as a table position.
+     *
+     * @param h  the hash code
+     * @return  the mixed hash code
+     */
+    private static int mix (int h)
+    {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    } // mix
+
+    /************************************************************************************
+     * Return whether key equals the values of tuple t at cols.
+     *
+     * @param key   the group key values
+     * @param t     the tuple
+     * @param cols  the column positions of the key values in t
+     * @return  whether the values are equal
+     */
+    private static boolean sameKey (Comparable [] key, Comparable [] t, int [] cols)
+    {
+        for (int j = 0; j < cols.length; j++) {
+            if (! Objects.equals (key [j], t [cols [j]])) return false;
+        } // for
+        return true;
+    } // sameKey
+
+    /************************************************************************************
+     * Return the column positions 0 .. k-1.
+     *
+     * @param k  the number of columns
+     * @return  the column positions
+     */
+    private static int [] identity (int k)
+    {
+        return IntStream.range (0, k).toArray ();
+    } // identity
+
+    /************************************************************************************
+     * Return whether the domain is an INTEGER type.
+     *
+     * @param dom  the domain
+     * @return  whether it is Long, Integer, Short or Byte
+     */
+    static boolean integral (Class dom)
+    {
+        return dom == Long.class || dom == Integer.class || dom == Short.class || dom == Byte.class;
+    } // integral
+
+    /************************************************************************************
+     * Return whether the domain is a REAL type.
+     *
+     * @param dom  the domain
+     * @return  whether it is Double or Float
+     */
+    static boolean real (Class dom)
+    {
+        return dom == Double.class || dom == Float.class;
+    } // real
+
+} // HashAggregator class
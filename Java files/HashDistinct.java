@@ -0,0 +1,97 @@
+/****************************************************************************************
+ * @file  HashDistinct.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The HashDistinct class implements hash-based duplicate elimination.  Each tuple not
+ * seen before is passed to the output at once, and a hash set of the tuples passed on
+ * (the output tuples themselves, not copies) filters out later duplicates.  If the set
+ * outgrows the memory budget, the rest of the input is hash-partitioned into spill
+ * files, leaving out the tuples already seen, and each partition (which shares no
+ * tuples with the set or the other partitions) is made distinct on its own,
+ * recursively.  Only input not yet read is spilled, so besides the output, which the
+ * caller keeps, memory holds at most budget tuples per level.
+ */
+class HashDistinct
+{
+    /** Number of partitions created on each spill. */
+    private static final int FANOUT = 16;
+    /** Recursion depth after which a partition is kept in memory regardless of size. */
+    private static final int MAX_DEPTH = 6;
+
+    /************************************************************************************
+     * Pass the distinct tuples of the input to the output, each as soon as it is found.
+     *
+     * @param in      the input tuples
+     * @param budget  the maximum number of distinct tuples held in memory
+     * @param out     the output receiving the distinct tuples
+     */
+    static void distinct (Iterator <Comparable []> in, int budget, Consumer <Comparable []> out)
+    {
+        try {
+            distinct (in, budget, 0, out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // distinct
+
+    /************************************************************************************
+     * Pass the distinct tuples of the input to the output.
+     *
+     * @param in      the input tuples
+     * @param budget  the maximum number of distinct tuples held in memory
+     * @param depth   the partitioning depth (varies the partitioning hash)
+     * @param out     the output receiving the distinct tuples
+     */
+    private static void distinct (Iterator <Comparable []> in, int budget, int depth,
+                                  Consumer <Comparable []> out)
+        throws IOException
+    {
+        Set <List <Comparable>> seen = new HashSet <> ();
+
+        while (in.hasNext ()) {
+            Comparable [] t = in.next ();
+            if (seen.add (Arrays.asList (t))) out.accept (t);
+            if (seen.size () > budget && depth < MAX_DEPTH && in.hasNext ()) {
+                SpillFile [] part = new SpillFile [FANOUT];
+                try {
+                    for (int p = 0; p < FANOUT; p++) part [p] = new SpillFile ();
+                    while (in.hasNext ()) {
+                        Comparable []     u = in.next ();
+                        List <Comparable> k = Arrays.asList (u);
+                        if (! seen.contains (k)) part [partition (k, depth)].add (u);
+                    } // while
+                    seen = null;                                         // not needed by the partitions
+                    for (SpillFile sf : part) {
+                        try (SpillFile.Reader r = sf.iterator ()) {
+                            distinct (r, budget, depth + 1, out);
+                        } // try
+                    } // for
+                } finally {
+                    for (SpillFile sf : part) if (sf != null) sf.close ();
+                } // try
+                return;
+            } // if
+        } // while
+    } // distinct
+
+    /************************************************************************************
+     * Return the partition for tuple t, using a different hash mix at each depth.
+     *
+     * @param t      the tuple (as a list)
+     * @param depth  the partitioning depth
+     * @return  the partition number
+     */
+    private static int partition (List <Comparable> t, int depth)
+    {
+        int h = t.hashCode () * 0x9E3779B9;
+        return Integer.rotateLeft (h, 4 * depth) >>> 28;
+    } // partition
+
+} // HashDistinct class
@@ -18,6 +18,8 @@ import static java.lang.System.out;
 public class KeyType
        implements Comparable <KeyType>, Serializable
 {
+    /** Version of the serialized form (pinned to that of the first release). */
+    private static final long serialVersionUID = -7485454919318814815L;
     /** Array holding the attribute values for a particular key
      */
     private final Comparable [] key;
@@ -78,6 +80,15 @@ public class KeyType
         return sum;
     } // hashCode
 
+    /*************************************************************************************
+     * Return the attribute values making up the key.
+     * @return  the key values
+     */
+    Comparable [] values ()
+    {
+        return key;
+    } // values
+
     /*************************************************************************************
      * Convert the key to a string.
      * @return  the string representation of the key
@@ -0,0 +1,166 @@
+/****************************************************************************************
+ * @file  LoadClient.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The LoadClient class generates load for a QueryServer: it opens many concurrent
+ * sessions, each sending a number of commands in turn and reading each reply in full,
+ * and reports the throughput and the latency percentiles of the commands.  The
+ * commands are read from a file (one per line) and used round robin, so each session
+ * starts at a different command.
+ */
+public class LoadClient
+{
+    /** Commands used when no command file is given (for the MovieDB tables). */
+    private static final String [] DEFAULT = {
+        "SELECT movie year < 1980",
+        "SELECTKEY movie Star_Wars 1977",
+        "PROJECT movie genre",
+        "JOIN movie studioName name studio",
+        "UNION movie cinema",
+        "MINUS movie cinema",
+        "SELECT movie genre = sciFi"
+    };
+
+    /************************************************************************************
+     * Run the load.
+     *
+     * #usage java LoadClient 5433 1000 100
+     * #usage java LoadClient /tmp/moviedb.sock 5000 20 queries.txt
+     *
+     * @param args  the server's port or socket path, the number of sessions, the number
+     *              of commands per session, and optionally a file of commands
+     */
+    public static void main (String [] args)
+           throws Exception
+    {
+        if (args.length < 3) {
+            out.println ("usage: java LoadClient <port | socket path> sessions commands [command file]");
+            return;
+        } // if
+        SocketAddress addr     = QueryServer.address (args [0]);
+        int           sessions = Integer.parseInt (args [1]);
+        int           commands = Integer.parseInt (args [2]);
+        String []     cmds     = (args.length > 3) ? readCommands (args [3]) : DEFAULT;
+
+        long []        latency = new long [sessions * commands];
+        AtomicInteger  done    = new AtomicInteger ();
+        AtomicInteger  errors  = new AtomicInteger ();
+        AtomicLong     tuples  = new AtomicLong ();
+        CountDownLatch start   = new CountDownLatch (1);
+
+        ExecutorService exec = QueryServer.sessionExecutor ();
+        List <Future <?>> runs = new ArrayList <> ();
+        for (int s = 0; s < sessions; s++) {
+            int id = s;
+            runs.add (exec.submit (() -> {
+                try (SocketChannel   ch  = QueryServer.connect (addr);
+                     BufferedReader  in  = new BufferedReader (new InputStreamReader (
+                                               Channels.newInputStream (ch), StandardCharsets.UTF_8));
+                     PrintWriter     req = new PrintWriter (new BufferedWriter (new OutputStreamWriter (
+                                               Channels.newOutputStream (ch), StandardCharsets.UTF_8)))) {
+                    start.await ();
+                    for (int i = 0; i < commands; i++) {
+                        long t0 = System.nanoTime ();
+                        req.println (cmds [(id + i) % cmds.length]);
+                        req.flush ();
+                        long n = readReply (in);
+                        latency [id * commands + i] = System.nanoTime () - t0;
+                        if (n < 0) errors.incrementAndGet ();
+                        else       tuples.addAndGet (n);
+                        done.incrementAndGet ();
+                    } // for
+                    req.println ("QUIT");
+                    req.flush ();
+                } // try
+                return null;
+            }));
+        } // for
+
+        long t0 = System.nanoTime ();
+        start.countDown ();
+        int failed = 0;
+        for (Future <?> f : runs) {
+            try {
+                f.get ();
+            } catch (ExecutionException ex) {
+                if (failed++ == 0) ex.getCause ().printStackTrace ();
+            } // try
+        } // for
+        double secs = (System.nanoTime () - t0) / 1e9;
+        exec.shutdown ();
+
+        int n = done.get ();
+        long [] lat = new long [n];
+        int k = 0;
+        for (long l : latency) if (l > 0 && k < n) lat [k++] = l;
+        Arrays.sort (lat, 0, k);
+
+        out.printf ("%d sessions x %d commands: %d done in %.2f s, %d errors, %d failed sessions%n",
+                    sessions, commands, n, secs, errors.get (), failed);
+        out.printf ("throughput %.0f commands/s, %.0f tuples/s%n", n / secs, tuples.get () / secs);
+        out.printf ("latency ms: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n",
+                    percentile (lat, k, 50), percentile (lat, k, 95), percentile (lat, k, 99),
+                    k == 0 ? 0.0 : lat [k - 1] / 1e6);
+    } // main
+
+    /************************************************************************************
+     * Read one reply from the server.
+     *
+     * @param in  the server's reply stream
+     * @return  the number of tuples in the reply, or -1 for an error reply
+     */
+    private static long readReply (BufferedReader in)
+            throws IOException
+    {
+        for (String line; (line = in.readLine ()) != null; ) {
+            if (line.startsWith ("ERR")) return -1;
+            if (line.startsWith ("END ")) return Long.parseLong (line.substring (4));
+            if (line.startsWith ("BATCH ")) {
+                for (int i = Integer.parseInt (line.substring (6)); i > 0; i--) in.readLine ();
+            } // if
+        } // for
+        throw new EOFException ("server closed the connection");
+    } // readReply
+
+    /************************************************************************************
+     * Read the non-blank lines of a command file.
+     *
+     * @param file  the file name
+     * @return  the commands
+     */
+    private static String [] readCommands (String file)
+            throws IOException
+    {
+        try (BufferedReader in = new BufferedReader (new FileReader (file))) {
+            return in.lines ().map (String::trim).filter (l -> ! l.isEmpty ()).toArray (String []::new);
+        } // try
+    } // readCommands
+
+    /************************************************************************************
+     * Return the given percentile of the first n sorted latencies in milliseconds.
+     *
+     * @param lat  the sorted latencies in nanoseconds
+     * @param n    the number of latencies
+     * @param p    the percentile
+     * @return  the latency in milliseconds
+     */
+    private static double percentile (long [] lat, int n, int p)
+    {
+        if (n == 0) return 0.0;
+        return lat [Math.min (n - 1, (int) Math.ceil (p / 100.0 * n) - 1)] / 1e6;
+    } // percentile
+
+} // LoadClient class
@@ -0,0 +1,108 @@
+/****************************************************************************************
+ * @file  LoserTree.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The LoserTree class merges k sorted runs into one sorted sequence.  Each internal node
+ * of the tournament tree remembers the loser of the match played there, so replacing the
+ * winner takes one comparison per level (log k) rather than the 2 log k of a heap.  Ties
+ * go to the lower run, so merging runs of a stable sort keeps the result stable.
+ */
+class LoserTree
+       implements Iterator <Comparable []>
+{
+    /** The sorted runs. */
+    private final Iterator <Comparable []> [] run;
+    /** The current head of each run (null once the run is exhausted). */
+    private final Comparable [][] head;
+    /** tree [0] is the winning run, tree [1 .. k-1] the losing run at each node. */
+    private final int [] tree;
+    /** The tuple comparator. */
+    private final Comparator <Comparable []> cmp;
+    /** Number of runs (also the index of the sentinel that beats every run). */
+    private final int k;
+
+    /************************************************************************************
+     * Construct a loser tree over the given sorted runs.
+     * @param _run  the sorted runs
+     * @param _cmp  the tuple comparator the runs are sorted by
+     */
+    LoserTree (List <Iterator <Comparable []>> _run, Comparator <Comparable []> _cmp)
+    {
+        @SuppressWarnings("unchecked")
+        Iterator <Comparable []> [] r = _run.toArray (new Iterator [0]);
+        run  = r;
+        cmp  = _cmp;
+        k    = run.length;
+        head = new Comparable [k][];
+        tree = new int [Math.max (k, 1)];
+
+        Arrays.fill (tree, k);
+        for (int s = 0; s < k; s++) head [s] = run [s].hasNext () ? run [s].next () : null;
+        for (int s = k - 1; s >= 0; s--) adjust (s);
+    } // constructor
+
+    /************************************************************************************
+     * Return whether any tuples remain.
+     *
+     * @return  whether the merge has more tuples
+     */
+    public boolean hasNext ()
+    {
+        return k > 0 && head [tree [0]] != null;
+    } // hasNext
+
+    /************************************************************************************
+     * Return the smallest remaining tuple and advance its run.
+     *
+     * @return  the next tuple in sorted order
+     */
+    public Comparable [] next ()
+    {
+        if (! hasNext ()) throw new NoSuchElementException ();
+        int w = tree [0];
+        Comparable [] t = head [w];
+        head [w] = run [w].hasNext () ? run [w].next () : null;
+        adjust (w);
+        return t;
+    } // next
+
+    /************************************************************************************
+     * Replay the matches on the path from leaf s to the root.
+     *
+     * @param s  the run whose head changed
+     */
+    private void adjust (int s)
+    {
+        for (int t = (s + k) >> 1; t > 0; t >>= 1) {
+            if (loses (s, tree [t])) {
+                int tmp = s;
+                s = tree [t];
+                tree [t] = tmp;
+            } // if
+        } // for
+        tree [0] = s;
+    } // adjust
+
+    /************************************************************************************
+     * Return whether run a loses to run b (its head is larger).
+     *
+     * @param a  the first run
+     * @param b  the second run
+     * @return  whether a loses the match
+     */
+    private boolean loses (int a, int b)
+    {
+        if (a == k) return false;                          // sentinel wins
+        if (b == k) return true;
+        if (head [a] == null) return head [b] != null || a > b;   // exhausted runs lose
+        if (head [b] == null) return false;
+        int r = cmp.compare (head [a], head [b]);
+        return r > 0 || (r == 0 && a > b);
+    } // loses
+
+} // LoserTree class
@@ -0,0 +1,176 @@
+/****************************************************************************************
+ * @file  MappedTuples.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The MappedTuples class is the tuple list of a table loaded lazily from a memory
+ * mapped segment file (see Table.loadMapped).  Row groups are decoded on first access
+ * and kept in a small least recently used cache of pages, so loading reads only the
+ * header, the directory and (through the KeyIndex) the key index.  The list is
+ * read-only; the table materializes it in full before its first modification.
+ */
+class MappedTuples
+      extends AbstractList <Comparable []>
+      implements RandomAccess
+{
+    /** The mapped segment file. */
+    private final SegmentFile seg;
+    /** Number of rows. */
+    private final int rows;
+    /** Decoded row groups in least recently used order. */
+    private final LinkedHashMap <Integer, Comparable [][]> pages;
+
+    /************************************************************************************
+     * Construct the tuple list of a mapped segment file.
+     * @param _seg       the segment file (already mapped)
+     * @param maxPages   the maximum number of decoded row groups to keep
+     */
+    MappedTuples (SegmentFile _seg, int maxPages)
+    {
+        seg   = _seg;
+        rows  = seg.rows ();
+        pages = new LinkedHashMap <> (16, 0.75f, true) {
+            protected boolean removeEldestEntry (Map.Entry <Integer, Comparable [][]> e)
+            {
+                return size () > maxPages;
+            } // removeEldestEntry
+        };
+    } // constructor
+
+    /************************************************************************************
+     * Return the number of rows.
+     *
+     * @return  the row count
+     */
+    public int size ()
+    {
+        return rows;
+    } // size
+
+    /************************************************************************************
+     * Return row i, decoding its row group if it is not cached.
+     *
+     * @param i  the row number
+     * @return  the tuple
+     */
+    public Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, rows);
+        return page (i / SegmentFile.GROUP) [i % SegmentFile.GROUP];
+    } // get
+
+    /************************************************************************************
+     * Return the decoded tuples of row group g.
+     *
+     * @param g  the row group
+     * @return  the tuples of the group
+     */
+    private synchronized Comparable [][] page (int g)
+    {
+        Comparable [][] p = pages.get (g);
+        if (p == null) {
+            try {
+                p = seg.mappedGroup (g);
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } // try
+            pages.put (g, p);
+        } // if
+        return p;
+    } // page
+
+    /************************************************************************************
+     * The KeyIndex class is the primary key index of a mapped table.  Lookups binary
+     * search the key index of the mapped segment file, and iteration is in key order.
+     * The index is read-only.
+     */
+    static class KeyIndex
+           extends AbstractMap <KeyType, Comparable []>
+    {
+        /** The mapped segment file. */
+        private final SegmentFile seg;
+        /** The tuples of the mapped table. */
+        private final MappedTuples tuples;
+
+        /********************************************************************************
+         * Construct the index of a mapped table.
+         * @param _tuples  the tuples of the mapped table
+         */
+        KeyIndex (MappedTuples _tuples)
+        {
+            tuples = _tuples;
+            seg    = tuples.seg;
+        } // constructor
+
+        /********************************************************************************
+         * Return the number of indexed keys.
+         * @return  the key count
+         */
+        public int size ()
+        {
+            return seg.keyCount ();
+        } // size
+
+        /********************************************************************************
+         * Return whether the key value is indexed.
+         * @param k  the key value
+         * @return  whether the key is present
+         */
+        public boolean containsKey (Object k)
+        {
+            return seg.find (((KeyType) k).values ()) >= 0;
+        } // containsKey
+
+        /********************************************************************************
+         * Return the tuple with the given key value, decoding only its row group.
+         * @param k  the key value
+         * @return  the tuple, or null if absent
+         */
+        public Comparable [] get (Object k)
+        {
+            int row = seg.find (((KeyType) k).values ());
+            return (row < 0) ? null : tuples.get (row);
+        } // get
+
+        /********************************************************************************
+         * Return the entries (key value, tuple) in key order.
+         * @return  the entry set view
+         */
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            return new AbstractSet <> () {
+                public int size ()
+                {
+                    return seg.keyCount ();
+                } // size
+
+                public Iterator <Map.Entry <KeyType, Comparable []>> iterator ()
+                {
+                    return new Iterator <> () {
+                        private int k = 0;
+
+                        public boolean hasNext ()
+                        {
+                            return k < seg.keyCount ();
+                        } // hasNext
+
+                        public Map.Entry <KeyType, Comparable []> next ()
+                        {
+                            if (! hasNext ()) throw new NoSuchElementException ();
+                            Comparable [] kv = new Comparable [seg.key.length];
+                            for (int j = 0; j < kv.length; j++) kv [j] = seg.keyValue (k, j);
+                            return new AbstractMap.SimpleImmutableEntry <> (new KeyType (kv), tuples.get (seg.keyRow (k++)));
+                        } // next
+                    };
+                } // iterator
+            };
+        } // entrySet
+
+    } // KeyIndex class
+
+} // MappedTuples class
@@ -0,0 +1,242 @@
+/****************************************************************************************
+ * @file  MaterializedView.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The MaterializedView class keeps the result of a select, project or equi-join over
+ * base tables current as tuples are inserted into them.  The view registers with its
+ * base tables, and each insert applies only the delta:
+ * -  select: the new tuple is tested against the predicate
+ * -  project: the projected tuple is added unless already present (set semantics)
+ * -  join: the new tuple probes a hash table on the other side's join attributes
+ * An update or delete of a base table marks the view stale; it is recomputed in full
+ * the next time it is read.
+ */
+public class MaterializedView
+{
+    /** Kinds of view. */
+    private enum Kind { SELECT, PROJECT, JOIN }
+
+    /** The kind of view. */
+    private final Kind kind;
+    /** The (lhs) base table. */
+    private final Table base;
+    /** The rhs base table (join only). */
+    private final Table base2;
+    /** The selection predicate (select only). */
+    private final Predicate <Comparable []> predicate;
+    /** The projected (project) or lhs join (join) attributes. */
+    private final String attributes;
+    /** The rhs join attributes (join only). */
+    private final String attributes2;
+    /** Column positions of attributes in base. */
+    private final int [] cols;
+    /** Column positions of attributes2 in base2. */
+    private final int [] cols2;
+
+    /** The view contents. */
+    private Table result;
+    /** Whether the view must be recomputed before it is read. */
+    private boolean stale = false;
+    /** Tuples already in a project view. */
+    private Set <List <Comparable>> seen;
+    /** Tuples of base (lhs) by join attribute values. */
+    private Map <List <Comparable>, List <Comparable []>> left;
+    /** Tuples of base2 (rhs) by join attribute values. */
+    private Map <List <Comparable>, List <Comparable []>> right;
+
+    /************************************************************************************
+     * Construct a view, register it with its base tables and compute it.
+     * @param _kind         the kind of view
+     * @param _base         the (lhs) base table
+     * @param _base2        the rhs base table (join only)
+     * @param _predicate    the selection predicate (select only)
+     * @param _attributes   the projected (project) or lhs join (join) attributes
+     * @param _attributes2  the rhs join attributes (join only)
+     */
+    private MaterializedView (Kind _kind, Table _base, Table _base2, Predicate <Comparable []> _predicate,
+                              String _attributes, String _attributes2)
+    {
+        kind        = _kind;
+        base        = _base;
+        base2       = _base2;
+        predicate   = _predicate;
+        attributes  = _attributes;
+        attributes2 = _attributes2;
+        cols        = (attributes == null) ? null : base.cols (attributes.split (" "));
+        cols2       = (attributes2 == null) ? null : base2.cols (attributes2.split (" "));
+
+        base.addView (this);
+        if (base2 != null) base2.addView (this);
+        refresh ();
+    } // constructor
+
+    /************************************************************************************
+     * Create a view of the tuples of base satisfying the predicate.
+     *
+     * #usage MaterializedView.select (movie, t -> (Integer) t[movie.col("year")] < 1980)
+     *
+     * @param base       the base table
+     * @param predicate  the check condition for tuples
+     * @return  the view
+     */
+    public static MaterializedView select (Table base, Predicate <Comparable []> predicate)
+    {
+        return new MaterializedView (Kind.SELECT, base, null, predicate, null, null);
+    } // select
+
+    /************************************************************************************
+     * Create a view of the projection of base onto the given attributes.
+     *
+     * #usage MaterializedView.project (movie, "genre")
+     *
+     * @param base        the base table
+     * @param attributes  the attributes to project onto
+     * @return  the view
+     */
+    public static MaterializedView project (Table base, String attributes)
+    {
+        return new MaterializedView (Kind.PROJECT, base, null, null, attributes, null);
+    } // project
+
+    /************************************************************************************
+     * Create a view of the equi-join of base and base2 (see Table.join).
+     *
+     * #usage MaterializedView.join (movie, "studioName", "name", studio)
+     *
+     * @param base         the lhs base table
+     * @param attributes1  the attributes of base to be compared
+     * @param attributes2  the attributes of base2 to be compared
+     * @param base2        the rhs base table
+     * @return  the view
+     */
+    public static MaterializedView join (Table base, String attributes1, String attributes2, Table base2)
+    {
+        return new MaterializedView (Kind.JOIN, base, base2, null, attributes1, attributes2);
+    } // join
+
+    /************************************************************************************
+     * Return the current contents of the view.  The returned table is replaced when the
+     * view is recomputed, so call this again rather than holding on to the table.
+     *
+     * @return  the view's table
+     */
+    public Table getTable ()
+    {
+        if (stale) refresh ();
+        return result;
+    } // getTable
+
+    /************************************************************************************
+     * Recompute the view in full from its base tables.  The view keeps a table of its
+     * own even when the query result comes from the cache, since deltas are appended
+     * to it.
+     */
+    public void refresh ()
+    {
+        stale = false;
+        switch (kind) {
+        case SELECT:
+            result = base.select (predicate).unshared ();
+            break;
+
+        case PROJECT:
+            result = base.project (attributes).unshared ();
+            seen   = new HashSet <> ();
+            for (Comparable [] t : result.rows ()) seen.add (Arrays.asList (t));
+            break;
+
+        case JOIN:
+            left  = new HashMap <> ();
+            right = new HashMap <> ();
+            for (Comparable [] t : base.rows ())  bucket (left, t, cols).add (t);
+            for (Comparable [] t : base2.rows ()) bucket (right, t, cols2).add (t);
+            result = base.join (attributes, attributes2, base2).unshared ();
+            break;
+        } // switch
+    } // refresh
+
+    /************************************************************************************
+     * Apply the delta for a tuple inserted into a base table.
+     *
+     * @param table  the base table inserted into
+     * @param tup    the inserted tuple
+     */
+    void onInsert (Table table, Comparable [] tup)
+    {
+        if (stale) return;
+        switch (kind) {
+        case SELECT:
+            if (predicate.test (tup)) result.append (tup);
+            break;
+
+        case PROJECT:
+            Comparable [] p = extract (tup, cols);
+            if (seen.add (Arrays.asList (p))) result.append (p);
+            break;
+
+        case JOIN:
+            if (table == base)  bucket (left, tup, cols).add (tup);      // a self-join adds tup to both
+            if (table == base2) bucket (right, tup, cols2).add (tup);    // sides first, so (tup, tup) is found
+            if (table == base) {
+                List <Comparable []> match = right.get (Arrays.asList (extract (tup, cols)));
+                if (match != null) {
+                    for (Comparable [] t2 : new ArrayList <> (match)) result.append (ArrayUtil.concat (tup, t2));
+                } // if
+            } // if
+            if (table == base2) {
+                List <Comparable []> match = left.get (Arrays.asList (extract (tup, cols2)));
+                if (match != null) {
+                    for (Comparable [] t1 : new ArrayList <> (match)) {
+                        if (t1 != tup) result.append (ArrayUtil.concat (t1, tup));   // (tup, tup) done above
+                    } // for
+                } // if
+            } // if
+            break;
+        } // switch
+    } // onInsert
+
+    /************************************************************************************
+     * Note an update or delete of a base table, which the view does not apply as a delta.
+     *
+     * @param table  the base table changed
+     */
+    void onChange (Table table)
+    {
+        stale = true;
+    } // onChange
+
+    /************************************************************************************
+     * Return the bucket of a join hash table for tuple t, creating it if needed.
+     *
+     * @param map   the join hash table
+     * @param t     the tuple
+     * @param cols  the column positions of the join attributes in t
+     * @return  the list of tuples with the same join attribute values as t
+     */
+    private static List <Comparable []> bucket (Map <List <Comparable>, List <Comparable []>> map,
+                                                Comparable [] t, int [] cols)
+    {
+        return map.computeIfAbsent (Arrays.asList (extract (t, cols)), k -> new ArrayList <> ());
+    } // bucket
+
+    /************************************************************************************
+     * Extract the given column positions from tuple t.
+     *
+     * @param t     the tuple to extract from
+     * @param cols  the column positions
+     * @return  a smaller tuple extracted from tuple t
+     */
+    private static Comparable [] extract (Comparable [] t, int [] cols)
+    {
+        Comparable [] tup = new Comparable [cols.length];
+        for (int j = 0; j < cols.length; j++) tup [j] = t [cols [j]];
+        return tup;
+    } // extract
+
+} // MaterializedView class
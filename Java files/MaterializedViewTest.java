@@ -0,0 +1,119 @@
+/****************************************************************************************
+ * @file  MaterializedViewTest.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.util.*;
+import java.util.function.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The MaterializedViewTest class checks that views maintained by deltas hold the same
+ * tuples as the query recomputed from scratch.
+ *
+ * #usage java -ea MaterializedViewTest
+ */
+class MaterializedViewTest
+{
+    /** Number of checks passed. */
+    private static int passed = 0;
+
+    /************************************************************************************
+     * Run the checks, failing on the first that does not hold.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Table.setTrace (false);
+        selfJoin ();
+        join ();
+        cachedBase ();
+        out.println ("MaterializedViewTest: " + passed + " checks passed");
+    } // main
+
+    /************************************************************************************
+     * A self-join view pairs each inserted tuple with itself as well as with the others.
+     */
+    private static void selfJoin ()
+    {
+        Table            s = new Table ("s", "a b", "Integer Integer", "a");
+        MaterializedView v = MaterializedView.join (s, "b", "b", s);
+
+        s.insert (new Comparable [] { 1, 7 });
+        check (same (v.getTable (), s.join ("b", "b", s)), "self-join after one insert");
+        for (int i = 2; i < 20; i++) {
+            s.insert (new Comparable [] { i, i % 3 });
+            check (same (v.getTable (), s.join ("b", "b", s)), "self-join after insert " + i);
+        } // for
+    } // selfJoin
+
+    /************************************************************************************
+     * A join view of two tables matches the join after inserts into either side.
+     */
+    private static void join ()
+    {
+        Table            l = new Table ("l", "a b", "Integer Integer", "a");
+        Table            r = new Table ("r", "c d", "Integer Integer", "c");
+        MaterializedView v = MaterializedView.join (l, "b", "d", r);
+
+        for (int i = 0; i < 20; i++) {
+            if (i % 2 == 0) l.insert (new Comparable [] { i, i % 4 });
+            else            r.insert (new Comparable [] { i, i % 4 });
+            check (same (v.getTable (), l.join ("b", "d", r)), "join after insert " + i);
+        } // for
+    } // join
+
+    /************************************************************************************
+     * A view computed while the cache is on does not append its deltas to the cached
+     * result handed out to other callers.
+     */
+    private static void cachedBase ()
+    {
+        Table.setCache (new QueryCache (1_000_000));
+        try {
+            Table                     m = new Table ("m", "a b", "Integer Integer", "a");
+            Predicate <Comparable []> p = t -> (Integer) t [1] == 0;
+            for (int i = 0; i < 10; i++) m.insert (new Comparable [] { i, i % 2 });
+            Table                     r = m.select (p);
+            MaterializedView          v = MaterializedView.select (m, p);
+            m.insert (new Comparable [] { 10, 0 });
+            check (r.size () == 5, "cached result is unchanged");
+            check (v.getTable ().size () == 6 && same (v.getTable (), m.select (p)), "view has the insert");
+        } finally {
+            Table.setCache (null);
+        } // try
+    } // cachedBase
+
+    /************************************************************************************
+     * Return whether two tables hold the same tuples, ignoring order.
+     *
+     * @param t1  the first table
+     * @param t2  the second table
+     * @return  whether the tuples are the same
+     */
+    private static boolean same (Table t1, Table t2)
+    {
+        List <List <Comparable>> r1 = new ArrayList <> (), r2 = new ArrayList <> ();
+        for (Comparable [] t : t1.rows ()) r1.add (Arrays.asList (t));
+        for (Comparable [] t : t2.rows ()) r2.add (Arrays.asList (t));
+        Comparator <List <Comparable>> order = Comparator.comparing (Object::toString);
+        r1.sort (order);
+        r2.sort (order);
+        return r1.equals (r2);
+    } // same
+
+    /************************************************************************************
+     * Check that a condition holds.
+     *
+     * @param cond  the condition
+     * @param what  what is checked
+     */
+    private static void check (boolean cond, String what)
+    {
+        if (! cond) throw new AssertionError ("MaterializedViewTest: " + what);
+        passed++;
+    } // check
+
+} // MaterializedViewTest class
@@ -0,0 +1,550 @@
+/****************************************************************************************
+ * @file  OffHeapStore.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The OffHeapStore class keeps the tuples of a table outside the Java heap, in direct
+ * byte buffer arenas, so heap use does not grow with the number of tuples.  Each tuple
+ * is a fixed width row laid out by the domain schema: a null bitmap followed by the
+ * fields, with STRING values (String, Character) stored as their dictionary codes.
+ * -  As a List, the store materializes a tuple on each get (with canonical STRING
+ * -  instances), so all operators work on it unchanged; rows are append-only.
+ * -  Fields can be read in place (bits, isNull) without materializing tuples.
+ * -  The KeyIndex maps key values to row numbers in an off-heap hash table.
+ */
+class OffHeapStore
+      extends AbstractList <Comparable []>
+      implements RandomAccess, Serializable
+{
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+    /** Target size of an arena in bytes. */
+    private static final int ARENA = 1 << 20;
+
+    /** Attribute domains. */
+    private final Class [] domain;
+    /** Dictionaries for the STRING domain columns (null for other domains). */
+    private final ColumnDictionary [] dict;
+    /** Byte offset of each field within a row. */
+    private final int [] off;
+    /** Row width in bytes. */
+    private final int width;
+    /** Number of rows per arena. */
+    private final int perArena;
+    /** Number of rows. */
+    private int rows = 0;
+    /** The arenas (not serialized; rows are written out by writeObject). */
+    private transient List <ByteBuffer> arenas = new ArrayList <> ();
+
+    /************************************************************************************
+     * Construct an empty store.
+     * @param _domain  the attribute domains
+     * @param _dict    the dictionaries for the STRING domain columns
+     */
+    OffHeapStore (Class [] _domain, ColumnDictionary [] _dict)
+    {
+        domain = _domain;
+        dict   = _dict;
+        off    = new int [domain.length];
+        int w  = (domain.length + 7) / 8;                               // null bitmap
+        for (int j = 0; j < domain.length; j++) {
+            if (dict [j] == null && ! HashAggregator.integral (domain [j]) && ! HashAggregator.real (domain [j])
+                                 && domain [j] != Boolean.class) {
+                throw new IllegalArgumentException ("OffHeapStore: no row layout for domain " + domain [j]);
+            } // if
+            off [j] = w;
+            w += fieldWidth (j);
+        } // for
+        width    = w;
+        perArena = Math.max (1, ARENA / width);
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // List Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the number of rows.
+     *
+     * @return  the row count
+     */
+    public int size ()
+    {
+        return rows;
+    } // size
+
+    /************************************************************************************
+     * Materialize row i as a tuple.
+     *
+     * @param i  the row number
+     * @return  a new tuple holding the row's values
+     */
+    public Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, rows);
+        Comparable [] t = new Comparable [domain.length];
+        for (int j = 0; j < t.length; j++) t [j] = get (i, j);
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Append a tuple as a new row.
+     *
+     * @param t  the tuple to append
+     * @return  true
+     */
+    public boolean add (Comparable [] t)
+    {
+        if (rows == arenas.size () * perArena) {
+            arenas.add (ByteBuffer.allocateDirect (perArena * width).order (ByteOrder.nativeOrder ()));
+        } // if
+        ByteBuffer b = arenas.get (rows / perArena);
+        int        p = (rows % perArena) * width;
+        for (int j = 0; j < domain.length; j++) {
+            if (t [j] == null) {
+                b.put (p + j / 8, (byte) (b.get (p + j / 8) | (1 << (j % 8))));
+            } else {
+                put (b, p + off [j], j, t [j]);
+            } // if
+        } // for
+        rows++;
+        modCount++;
+        return true;
+    } // add
+
+    //----------------------------------------------------------------------------------
+    // Field Access
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the value of field j of row i.
+     *
+     * @param i  the row number
+     * @param j  the column position
+     * @return  the value (the canonical instance for a STRING value)
+     */
+    Comparable get (int i, int j)
+    {
+        ByteBuffer b = arenas.get (i / perArena);
+        int        p = (i % perArena) * width;
+        if ((b.get (p + j / 8) & (1 << (j % 8))) != 0) return null;
+        p += off [j];
+
+        if (dict [j] != null)             return dict [j].decode (b.getInt (p));
+        if (domain [j] == Integer.class)  return b.getInt (p);
+        if (domain [j] == Long.class)     return b.getLong (p);
+        if (domain [j] == Double.class)   return b.getDouble (p);
+        if (domain [j] == Float.class)    return b.getFloat (p);
+        if (domain [j] == Short.class)    return b.getShort (p);
+        if (domain [j] == Byte.class)     return b.get (p);
+        return b.get (p) != 0;                                          // Boolean
+    } // get
+
+    /************************************************************************************
+     * Return whether field j of row i is null.
+     *
+     * @param i  the row number
+     * @param j  the column position
+     * @return  whether the field is null
+     */
+    boolean isNull (int i, int j)
+    {
+        return (arenas.get (i / perArena).get ((i % perArena) * width + j / 8) & (1 << (j % 8))) != 0;
+    } // isNull
+
+    /************************************************************************************
+     * Return the stored bits of field j of row i widened to a long: the value for
+     * INTEGER and Boolean columns, the IEEE bits for REAL columns and the dictionary
+     * code for STRING columns.  Two non-null fields of a column are equal exactly when
+     * their bits are.
+     *
+     * @param i  the row number
+     * @param j  the column position
+     * @return  the field's bits
+     */
+    long bits (int i, int j)
+    {
+        ByteBuffer b = arenas.get (i / perArena);
+        int        p = (i % perArena) * width + off [j];
+        switch (fieldWidth (j)) {
+        case 8:  return b.getLong (p);
+        case 4:  return b.getInt (p);
+        case 2:  return b.getShort (p);
+        default: return b.get (p);
+        } // switch
+    } // bits
+
+    /************************************************************************************
+     * Return the bits (see bits) a non-null value would be stored as in column j.
+     *
+     * @param v  the value
+     * @param j  the column position
+     * @return  the value's bits, or null for a STRING value not in the dictionary
+     */
+    Long bitsOf (Comparable v, int j)
+    {
+        if (dict [j] != null) {
+            int c = dict [j].code (v);
+            return (c < 0) ? null : (long) c;
+        } // if
+        if (domain [j] == Double.class)  return Double.doubleToRawLongBits ((Double) v);
+        if (domain [j] == Float.class)   return (long) Float.floatToRawIntBits ((Float) v);
+        if (domain [j] == Boolean.class) return ((Boolean) v) ? 1L : 0L;
+        return ((Number) v).longValue ();
+    } // bitsOf
+
+    /************************************************************************************
+     * Return the rows whose field j equals the given value, reading the fields in
+     * place; a STRING value is resolved to its code once.
+     *
+     * @param j  the column position
+     * @param v  the value (not null)
+     * @return  the row numbers
+     */
+    int [] find (int j, Comparable v)
+    {
+        Long target = bitsOf (v, j);
+        if (target == null) return new int [0];
+        long b = target;
+        int [] hit = new int [16];
+        int    n   = 0;
+        for (int i = 0; i < rows; i++) {
+            if (bits (i, j) == b && ! isNull (i, j)) {
+                if (n == hit.length) hit = Arrays.copyOf (hit, 2 * n);
+                hit [n++] = i;
+            } // if
+        } // for
+        return Arrays.copyOf (hit, n);
+    } // find
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the width in bytes of field j.
+     *
+     * @param j  the column position
+     * @return  the field width
+     */
+    private int fieldWidth (int j)
+    {
+        if (dict [j] != null) return 4;                                 // dictionary code
+        if (domain [j] == Long.class || domain [j] == Double.class)  return 8;
+        if (domain [j] == Integer.class || domain [j] == Float.class) return 4;
+        if (domain [j] == Short.class) return 2;
+        return 1;                                                       // Byte, Boolean
+    } // fieldWidth
+
+    /************************************************************************************
+     * Write non-null value v of column j at position p of arena b.
+     *
+     * @param b  the arena
+     * @param p  the byte position of the field
+     * @param j  the column position
+     * @param v  the value
+     */
+    private void put (ByteBuffer b, int p, int j, Comparable v)
+    {
+        if (dict [j] != null)                 b.putInt (p, dict [j].encode (v));
+        else if (domain [j] == Integer.class) b.putInt (p, (Integer) v);
+        else if (domain [j] == Long.class)    b.putLong (p, (Long) v);
+        else if (domain [j] == Double.class)  b.putDouble (p, (Double) v);
+        else if (domain [j] == Float.class)   b.putFloat (p, (Float) v);
+        else if (domain [j] == Short.class)   b.putShort (p, (Short) v);
+        else if (domain [j] == Byte.class)    b.put (p, (Byte) v);
+        else                                  b.put (p, (byte) (((Boolean) v) ? 1 : 0));
+    } // put
+
+    /************************************************************************************
+     * Write the rows as raw bytes after the schema.
+     *
+     * @param oos  the stream to write to
+     */
+    private void writeObject (ObjectOutputStream oos)
+            throws IOException
+    {
+        oos.defaultWriteObject ();
+        byte [] buf = new byte [perArena * width];
+        for (int a = 0; a < arenas.size (); a++) {
+            int n = Math.min (perArena, rows - a * perArena) * width;
+            arenas.get (a).get (0, buf, 0, n);
+            oos.write (buf, 0, n);
+        } // for
+    } // writeObject
+
+    /************************************************************************************
+     * Read the rows back into new arenas.
+     *
+     * @param ois  the stream to read from
+     */
+    private void readObject (ObjectInputStream ois)
+            throws IOException, ClassNotFoundException
+    {
+        ois.defaultReadObject ();
+        arenas = new ArrayList <> ();
+        byte [] buf = new byte [perArena * width];
+        for (int r = 0; r < rows; r += perArena) {
+            int n = Math.min (perArena, rows - r) * width;
+            ois.readFully (buf, 0, n);
+            arenas.add (ByteBuffer.allocateDirect (perArena * width).order (ByteOrder.nativeOrder ()).put (0, buf, 0, n));
+        } // for
+    } // readObject
+
+    /************************************************************************************
+     * The KeyIndex class is the primary key index of an off-heap table.  It maps key
+     * values to row numbers in an open addressing hash table held in a direct buffer,
+     * comparing the key fields of the rows in place.  As a Map it returns materialized
+     * tuples.  Keys are indexed as their tuples are appended: put maps a key to the
+     * last row of the store.  Keys cannot be removed (the store is append-only), and
+     * iteration is in row order.
+     */
+    static class KeyIndex
+           extends AbstractMap <KeyType, Comparable []>
+           implements Serializable
+    {
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+        /** The indexed store. */
+        private final OffHeapStore store;
+        /** Column positions of the key attributes. */
+        private final int [] cols;
+        /** Number of indexed keys. */
+        private int count = 0;
+        /** Slots holding row number + 1 (0 for an empty slot), rebuilt when read. */
+        private transient IntBuffer slots;
+
+        /********************************************************************************
+         * Construct an empty index.
+         * @param _store  the store to index
+         * @param _cols   the column positions of the key attributes
+         */
+        KeyIndex (OffHeapStore _store, int [] _cols)
+        {
+            store = _store;
+            cols  = _cols;
+            slots = alloc (64);
+        } // constructor
+
+        /********************************************************************************
+         * Return the number of indexed keys.
+         * @return  the key count
+         */
+        public int size ()
+        {
+            return count;
+        } // size
+
+        /********************************************************************************
+         * Return whether the key value is indexed.
+         * @param k  the key value
+         * @return  whether the key is present
+         */
+        public boolean containsKey (Object k)
+        {
+            return find ((KeyType) k) >= 0;
+        } // containsKey
+
+        /********************************************************************************
+         * Return the tuple with the given key value.
+         * @param k  the key value
+         * @return  the materialized tuple, or null if absent
+         */
+        public Comparable [] get (Object k)
+        {
+            int row = find ((KeyType) k);
+            return (row < 0) ? null : store.get (row);
+        } // get
+
+        /********************************************************************************
+         * Index the last row of the store under the given key value.  Rows are found
+         * by their position, so only the tuple just appended can be indexed this way
+         * (see rebuild to index all the rows).
+         * @param k    the key value
+         * @param tup  the tuple just appended to the store
+         * @return  the previously indexed tuple with that key, or null
+         * @throws IllegalArgumentException  if k is not the key of the last row
+         */
+        public Comparable [] put (KeyType k, Comparable [] tup)
+        {
+            int           last = store.size () - 1;
+            Comparable [] v    = k.values ();
+            boolean       ok   = last >= 0 && v.length == cols.length;
+            for (int j = 0; ok && j < cols.length; j++) ok = Objects.equals (store.get (last, cols [j]), v [j]);
+            if (! ok) throw new IllegalArgumentException ("KeyIndex.put: " + k + " is not the key of the last row");
+
+            if (2 * (count + 1) > slots.capacity ()) grow ();
+            int r = place (last);
+            return (r < 0) ? null : store.get (r);
+        } // put
+
+        /********************************************************************************
+         * Rebuild the index from all the rows of the store, a later row replacing an
+         * earlier one with the same key.
+         */
+        void rebuild ()
+        {
+            int n = 64;
+            while (n < 2 * store.size ()) n <<= 1;
+            slots = alloc (n);
+            count = 0;
+            for (int r = 0; r < store.size (); r++) place (r);
+        } // rebuild
+
+        /********************************************************************************
+         * Remove all keys.
+         */
+        public void clear ()
+        {
+            count = 0;
+            slots = alloc (64);
+        } // clear
+
+        /********************************************************************************
+         * Return a snapshot of the entries (key value, materialized tuple) in row order.
+         * @return  the entries
+         */
+        public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+        {
+            Set <Map.Entry <KeyType, Comparable []>> entries = new LinkedHashSet <> ();
+            for (int r = 0; r < store.size (); r++) {
+                if (slots.get (slot (keyBits (r))) - 1 != r) continue;     // key re-indexed to a later row
+                Comparable [] t  = store.get (r);
+                Comparable [] kv = new Comparable [cols.length];
+                for (int j = 0; j < cols.length; j++) kv [j] = t [cols [j]];
+                entries.add (new AbstractMap.SimpleImmutableEntry <> (new KeyType (kv), t));
+            } // for
+            return Collections.unmodifiableSet (entries);
+        } // entrySet
+
+        /********************************************************************************
+         * Return the row with the given key value.
+         * @param k  the key value
+         * @return  the row number, or -1 if absent
+         */
+        private int find (KeyType k)
+        {
+            Comparable [] v    = k.values ();
+            long []       want = new long [cols.length];
+            for (int j = 0; j < cols.length; j++) {
+                Long b = (v [j] == null) ? null : store.bitsOf (v [j], cols [j]);
+                if (b == null) return -1;                               // value not stored
+                want [j] = b;
+            } // for
+            return slots.get (slot (want)) - 1;
+        } // find
+
+        /********************************************************************************
+         * Return the slot holding the key with the given field bits, or the empty
+         * slot where it would go.
+         * @param want  the key field bits
+         * @return  the slot
+         */
+        private int slot (long [] want)
+        {
+            int mask = slots.capacity () - 1;
+            for (int s = (int) mix (want) & mask; ; s = (s + 1) & mask) {
+                int r = slots.get (s);
+                if (r == 0 || matches (r - 1, want)) return s;
+            } // for
+        } // slot
+
+        /********************************************************************************
+         * Return whether the key fields of row r have the given bits.
+         * @param r     the row number
+         * @param want  the key field bits
+         * @return  whether they match
+         */
+        private boolean matches (int r, long [] want)
+        {
+            for (int j = 0; j < cols.length; j++) {
+                if (store.bits (r, cols [j]) != want [j] || store.isNull (r, cols [j])) return false;
+            } // for
+            return true;
+        } // matches
+
+        /********************************************************************************
+         * Double the number of slots, rehashing the rows from their key fields.
+         */
+        private void grow ()
+        {
+            IntBuffer old = slots;
+            slots = alloc (2 * old.capacity ());
+            count = 0;
+            for (int s = 0; s < old.capacity (); s++) {
+                if (old.get (s) != 0) place (old.get (s) - 1);
+            } // for
+        } // grow
+
+        /********************************************************************************
+         * Index row r under its key, replacing any row indexed under the same key.
+         * @param r  the row number
+         * @return  the row previously indexed under the key, or -1
+         */
+        private int place (int r)
+        {
+            int s   = slot (keyBits (r));
+            int old = slots.get (s) - 1;
+            if (old < 0) count++;
+            slots.put (s, r + 1);
+            return old;
+        } // place
+
+        /********************************************************************************
+         * Return the bits of the key fields of row r.
+         * @param r  the row number
+         * @return  the key field bits
+         */
+        private long [] keyBits (int r)
+        {
+            long [] b = new long [cols.length];
+            for (int j = 0; j < cols.length; j++) b [j] = store.bits (r, cols [j]);
+            return b;
+        } // keyBits
+
+        /********************************************************************************
+         * Hash the bits of key fields.
+         * @param b  the key field bits
+         * @return  the hash
+         */
+        private static long mix (long [] b)
+        {
+            long h = 0x9E3779B97F4A7C15L;
+            for (long x : b) {
+                h ^= x;
+                h *= 0xBF58476D1CE4E5B9L;
+                h ^= h >>> 31;
+            } // for
+            return h;
+        } // mix
+
+        /********************************************************************************
+         * Allocate n empty slots off-heap.
+         * @param n  the number of slots (a power of two)
+         * @return  the slots
+         */
+        private static IntBuffer alloc (int n)
+        {
+            return ByteBuffer.allocateDirect (4 * n).order (ByteOrder.nativeOrder ()).asIntBuffer ();
+        } // alloc
+
+        /********************************************************************************
+         * Rebuild the slots from the store's rows after reading the index back.
+         * @param ois  the stream to read from
+         */
+        private void readObject (ObjectInputStream ois)
+                throws IOException, ClassNotFoundException
+        {
+            ois.defaultReadObject ();
+            rebuild ();
+        } // readObject
+
+    } // KeyIndex class
+
+} // OffHeapStore class
@@ -0,0 +1,391 @@
+/****************************************************************************************
+ * @file  PartitionedTable.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The PartitionedTable class implements a table split into partitions on chosen
+ * attributes, either by hash or by range.  Each partition is an ordinary Table with
+ * its own index and its own storage file (e.g., movie_p0.dbf).
+ * -  Selects on the partitioning attribute(s) only visit the matching partition.
+ * -  Other operators run on the partitions in parallel and concatenate the results.
+ * -  Joins of co-partitioned tables on their partitioning attributes are done
+ * -  partition by partition in parallel, with no repartitioning.
+ */
+public class PartitionedTable
+       implements Serializable
+{
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+    /** Relative path for storage directory. */
+    private static final String DIR = Table.DIR;
+    /** Filename extension for partitioned table metadata files. */
+    private static final String EXT = ".dbp";
+
+    /** Table name. */
+    private final String name;
+    /** Attributes the table is partitioned on. */
+    private final String [] partAttr;
+    /** Upper bounds (exclusive) of all but the last partition for range partitioning,
+     *  null for hash partitioning. */
+    private final Comparable [] bounds;
+    /** Number of partitions. */
+    private final int parts;
+    /** The partitions (saved in their own files). */
+    private transient Table [] part;
+
+    /************************************************************************************
+     * Construct an empty table hash partitioned on the given attributes.
+     * @param name           the name of the relation
+     * @param attributes     the string containing attributes names
+     * @param domains        the string containing attribute domains (data types)
+     * @param _key           the primary key
+     * @param partAttributes the attributes to partition on
+     * @param _parts         the number of partitions
+     */
+    public PartitionedTable (String name, String attributes, String domains, String _key,
+                             String partAttributes, int _parts)
+    {
+        this (name, partAttributes.split (" "), null, _parts);
+        for (int i = 0; i < parts; i++) part [i] = new Table (partName (i), attributes, domains, _key);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table range partitioned on the given attribute.  Partition i
+     * holds the tuples with bounds [i-1] <= value < bounds [i].
+     * @param name           the name of the relation
+     * @param attributes     the string containing attributes names
+     * @param domains        the string containing attribute domains (data types)
+     * @param _key           the primary key
+     * @param partAttribute  the attribute to partition on
+     * @param _bounds        the ascending partition bounds
+     */
+    public PartitionedTable (String name, String attributes, String domains, String _key,
+                             String partAttribute, Comparable [] _bounds)
+    {
+        this (name, new String [] { partAttribute }, _bounds, _bounds.length + 1);
+        for (int i = 0; i < parts; i++) part [i] = new Table (partName (i), attributes, domains, _key);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table with no partitions created yet.
+     * @param _name      the name of the relation
+     * @param _partAttr  the attributes to partition on
+     * @param _bounds    the range partition bounds (null for hash partitioning)
+     * @param _parts     the number of partitions
+     */
+    private PartitionedTable (String _name, String [] _partAttr, Comparable [] _bounds, int _parts)
+    {
+        name     = _name;
+        partAttr = _partAttr;
+        bounds   = _bounds;
+        parts    = _parts;
+        part     = new Table [parts];
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Public Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Insert a tuple into its partition.
+     *
+     * @param tup  the array of attribute values forming the tuple
+     * @return  whether insertion was successful
+     */
+    public boolean insert (Comparable [] tup)
+    {
+        return part [partitionOf (tup, part [0].cols (partAttr))].insert (tup);
+    } // insert
+
+    /************************************************************************************
+     * Select the tuples satisfying the given predicate, scanning the partitions in
+     * parallel.
+     *
+     * @param predicate  the check condition for tuples
+     * @return  a table with tuples satisfying the predicate
+     */
+    public Table select (Predicate <Comparable []> predicate)
+    {
+        return concat (p -> p.select (predicate));
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute equals the given value.
+     * When the table is partitioned on just that attribute, only one partition is read.
+     *
+     * @param attr   the attribute to compare
+     * @param value  the value the attribute must equal
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table select (String attr, Comparable value)
+    {
+        if (partAttr.length == 1 && partAttr [0].equals (attr)) {
+            return part [partitionOf (new Comparable [] { value }, new int [] { 0 })].select (attr, value);
+        } // if
+        return concat (p -> p.select (attr, value));
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute compares with the given
+     * value as op says, each partition skipping blocks using its zone map.  An
+     * equality on the partitioning attribute reads only one partition, and a range
+     * comparison on the attribute of a range partitioned table only the partitions
+     * whose bounds overlap the range.
+     *
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator (= != < <= > >=)
+     * @param value  the value to compare with
+     * @return  a table with tuples satisfying the comparison
+     */
+    public Table select (String attr, String op, Comparable value)
+    {
+        if (op.equals ("=")) return select (attr, value);
+        if (bounds == null || value == null || ! partAttr [0].equals (attr)) {
+            return concat (p -> p.select (attr, op, value));
+        } // if
+
+        int i = partitionOf (new Comparable [] { value }, new int [] { 0 });
+        switch (op) {
+        case "<": case "<=": return concat (0, i + 1, p -> p.select (attr, op, value));
+        case ">": case ">=": return concat (i, parts, p -> p.select (attr, op, value));
+        default:             return concat (p -> p.select (attr, op, value));
+        } // switch
+    } // select
+
+    /************************************************************************************
+     * Select the tuple with the given key value.  When the partitioning attributes are
+     * all key attributes, only one partition is read.
+     *
+     * @param keyVal  the given key value
+     * @return  a table with the tuple satisfying the key predicate
+     */
+    public Table select (KeyType keyVal)
+    {
+        String [] key = part [0].getKey ();
+        int [] pos = new int [partAttr.length];
+        for (int j = 0; j < partAttr.length; j++) {
+            pos [j] = Arrays.asList (key).indexOf (partAttr [j]);
+            if (pos [j] < 0) return concat (p -> p.select (keyVal));
+        } // for
+        return part [partitionOf (keyVal.values (), pos)].select (keyVal);
+    } // select
+
+    /************************************************************************************
+     * Project the tuples onto the given attributes (see Table.project).  Duplicates are
+     * eliminated within each partition, which is complete when the projection keeps
+     * all partitioning attributes.
+     *
+     * @param attributes  the attributes to project onto
+     * @return  a table of projected tuples
+     */
+    public Table project (String attributes)
+    {
+        if (Arrays.asList (attributes.split (" ")).containsAll (Arrays.asList (partAttr))) {
+            return concat (p -> p.project (attributes));
+        } // if
+        return toTable ().project (attributes);
+    } // project
+
+    /************************************************************************************
+     * Equi-join this table and table2 (see Table.join).  When both tables are
+     * partitioned the same way and the join attributes are their partitioning
+     * attributes, matching partitions are joined pairwise in parallel.
+     *
+     * #usage starsIn.join ("starName", "name", movieStar)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table join (String attributes1, String attributes2, PartitionedTable table2)
+    {
+        if (coPartitioned (table2, attributes1.split (" "), attributes2.split (" "))) {
+            List <Table> res = IntStream.range (0, parts).parallel ()
+                                        .mapToObj (i -> part [i].join (attributes1, attributes2, table2.part [i]))
+                                        .collect (Collectors.toList ());
+            return Table.concat (name + "_join", res);
+        } // if
+        out.println ("join: " + name + " and " + table2.name + " are not co-partitioned on the join attributes");
+        return toTable ().join (attributes1, attributes2, table2.toTable ());
+    } // join
+
+    /************************************************************************************
+     * Combine the partitions into one (unpartitioned) table.
+     *
+     * @return  a table holding all the tuples
+     */
+    public Table toTable ()
+    {
+        return Table.concat (name, Arrays.asList (part));
+    } // toTable
+
+    /************************************************************************************
+     * Get the partition with the given number.
+     *
+     * @param i  the partition number
+     * @return  the partition
+     */
+    public Table getPartition (int i)
+    {
+        return part [i];
+    } // getPartition
+
+    /************************************************************************************
+     * Get the number of partitions.
+     *
+     * @return  the number of partitions
+     */
+    public int getParts ()
+    {
+        return parts;
+    } // getParts
+
+    /************************************************************************************
+     * Print the tuple count of each partition.
+     */
+    public void printPartitions ()
+    {
+        out.println ("\n Partitions of " + name + " on " + Arrays.toString (partAttr)
+                     + (bounds == null ? " (hash)" : " (range " + Arrays.toString (bounds) + ")"));
+        for (int i = 0; i < parts; i++) out.println ("  " + part [i].getName () + ": " + part [i].size ());
+    } // printPartitions
+
+    /************************************************************************************
+     * Save the partitioning metadata and each partition in its own file.
+     */
+    public void save ()
+    {
+        try {
+            ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
+            oos.writeObject (this);
+            oos.close ();
+        } catch (IOException ex) {
+            out.println ("save: IO Exception");
+            ex.printStackTrace ();
+        } // try
+        Arrays.stream (part).parallel ().forEach (Table::save);
+    } // save
+
+    /************************************************************************************
+     * Load the partitioned table with the given name, loading its partitions in parallel.
+     *
+     * @param name  the name of the table to load
+     */
+    public static PartitionedTable load (String name)
+    {
+        PartitionedTable tab = null;
+        try {
+            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
+            tab = (PartitionedTable) ois.readObject ();
+            ois.close ();
+        } catch (IOException ex) {
+            out.println ("load: IO Exception");
+            ex.printStackTrace ();
+            return null;
+        } catch (ClassNotFoundException ex) {
+            out.println ("load: Class Not Found Exception");
+            ex.printStackTrace ();
+            return null;
+        } // try
+
+        PartitionedTable t = tab;
+        t.part = IntStream.range (0, t.parts).parallel ().mapToObj (i -> Table.load (t.partName (i)))
+                          .toArray (Table []::new);
+        return t;
+    } // load
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return the name of partition i.
+     *
+     * @param i  the partition number
+     * @return  the partition's table name
+     */
+    private String partName (int i)
+    {
+        return name + "_p" + i;
+    } // partName
+
+    /************************************************************************************
+     * Return the partition for the partitioning attribute values of tuple t.
+     *
+     * @param t     the tuple
+     * @param cols  the column positions of the partitioning attributes in t
+     * @return  the partition number
+     */
+    @SuppressWarnings("unchecked")
+    private int partitionOf (Comparable [] t, int [] cols)
+    {
+        if (bounds != null) {
+            int lo = 0, hi = bounds.length;               // first bound > value
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bounds [mid].compareTo (t [cols [0]]) <= 0) lo = mid + 1;
+                else                                             hi = mid;
+            } // while
+            return lo;
+        } // if
+
+        int h = 1;
+        for (int c : cols) h = 31 * h + (t [c] == null ? 0 : t [c].hashCode ());
+        h *= 0x9E3779B9;
+        return Math.floorMod (h ^ (h >>> 16), parts);
+    } // partitionOf
+
+    /************************************************************************************
+     * Determine whether this table and table2 are partitioned the same way on the
+     * given join attributes, so that matching tuples always lie in matching partitions.
+     *
+     * @param table2  the other table
+     * @param attrs1  the join attributes of this table
+     * @param attrs2  the join attributes of table2
+     * @return  whether the tables are co-partitioned on the join attributes
+     */
+    private boolean coPartitioned (PartitionedTable table2, String [] attrs1, String [] attrs2)
+    {
+        return parts == table2.parts
+            && Arrays.equals (bounds, table2.bounds)
+            && Arrays.equals (partAttr, attrs1)
+            && Arrays.equals (table2.partAttr, attrs2);
+    } // coPartitioned
+
+    /************************************************************************************
+     * Apply an operator to every partition in parallel and concatenate the results.
+     *
+     * @param op  the operator
+     * @return  a table holding the tuples of all the results
+     */
+    private Table concat (Function <Table, Table> op)
+    {
+        return concat (0, parts, op);
+    } // concat
+
+    /************************************************************************************
+     * Apply an operator to partitions from .. to-1 in parallel and concatenate the
+     * results.
+     *
+     * @param from  the first partition
+     * @param to    the partition after the last
+     * @param op    the operator
+     * @return  a table holding the tuples of all the results
+     */
+    private Table concat (int from, int to, Function <Table, Table> op)
+    {
+        List <Table> res = Arrays.stream (part, from, to).parallel ().map (op).collect (Collectors.toList ());
+        return Table.concat (name, res);
+    } // concat
+
+} // PartitionedTable class
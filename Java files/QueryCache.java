@@ -0,0 +1,244 @@
+/****************************************************************************************
+ * @file  QueryCache.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The QueryCache class provides an opt-in cache of operator results (see Table.setCache).
+ * Results are keyed by the operator, its arguments and the input tables together with
+ * their modification versions, so a mutation of an input table makes its entries
+ * unreachable; they are also dropped right away to free the space.  The cache holds at
+ * most capacity tuples and evicts the least recently used results first.
+ * -  Predicates are compared by identity, so reuse a predicate object to get hits.
+ * -  Hits return the cached result itself, which is read-only (Table refuses to modify
+ * -  a cached result), so a chain of operators applied to a hit hits again.
+ */
+public class QueryCache
+{
+    /************************************************************************************
+     * The Key class identifies an operator application: the operator name, its
+     * arguments, and its input tables (by identity) at their current versions.
+     */
+    static class Key
+    {
+        /** The operator name and arguments. */
+        private final List <Object> op;
+        /** The input tables. */
+        private final Table [] tables;
+        /** The versions of the input tables. */
+        private final long [] versions;
+
+        /********************************************************************************
+         * Construct a key.
+         * @param _op      the operator name and arguments
+         * @param _tables  the input tables
+         */
+        Key (List <Object> _op, Table [] _tables)
+        {
+            op       = _op;
+            tables   = _tables;
+            versions = new long [tables.length];
+            for (int i = 0; i < tables.length; i++) versions [i] = tables [i].getVersion ();
+        } // constructor
+
+        /********************************************************************************
+         * Determine whether two keys identify the same operator application.
+         * @param o  the other key
+         * @return  true if equal, false otherwise
+         */
+        public boolean equals (Object o)
+        {
+            if (! (o instanceof Key)) return false;
+            Key k = (Key) o;
+            if (tables.length != k.tables.length) return false;
+            for (int i = 0; i < tables.length; i++) if (tables [i] != k.tables [i]) return false;
+            return Arrays.equals (versions, k.versions) && op.equals (k.op);
+        } // equals
+
+        /********************************************************************************
+         * Compute a hash code consistent with equals.
+         * @return  an integer hash code value
+         */
+        public int hashCode ()
+        {
+            int h = op.hashCode ();
+            for (int i = 0; i < tables.length; i++) {
+                h = 31 * h + System.identityHashCode (tables [i]) + Long.hashCode (versions [i]);
+            } // for
+            return h;
+        } // hashCode
+
+    } // Key class
+
+    /** Maximum number of cached tuples. */
+    private final long capacity;
+    /** Number of cached tuples. */
+    private long size = 0;
+    /** Cached results in least recently used order. */
+    private final LinkedHashMap <Key, Table> results = new LinkedHashMap <> (16, 0.75f, true);
+    /** Keys of the cached results involving each table. */
+    private final Map <Table, Set <Key>> byTable = new IdentityHashMap <> ();
+    /** Statistics. */
+    private long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+
+    /************************************************************************************
+     * Construct an empty cache.
+     * @param _capacity  the maximum number of tuples held in cached results
+     */
+    public QueryCache (long _capacity)
+    {
+        capacity = _capacity;
+    } // constructor
+
+    /************************************************************************************
+     * Look up a result.
+     *
+     * @param k  the key of the operator application
+     * @return  the cached result, or null on a miss
+     */
+    synchronized Table get (Key k)
+    {
+        Table t = results.get (k);
+        if (t == null) {
+            misses++;
+            return null;
+        } // if
+        hits++;
+        return t;
+    } // get
+
+    /************************************************************************************
+     * Cache a result, evicting least recently used results to stay within capacity.
+     *
+     * @param k       the key of the operator application
+     * @param result  the result table
+     */
+    synchronized void put (Key k, Table result)
+    {
+        long w = weight (result);
+        if (w > capacity) return;
+        Table old = results.put (k, result);
+        if (old != null) size -= weight (old);
+        size += w;
+        for (Table t : k.tables) byTable.computeIfAbsent (t, x -> new HashSet <> ()).add (k);
+
+        Iterator <Map.Entry <Key, Table>> it = results.entrySet ().iterator ();
+        while (size > capacity && it.hasNext ()) {
+            Map.Entry <Key, Table> e = it.next ();
+            it.remove ();
+            forget (e.getKey (), e.getValue ());
+            evictions++;
+        } // while
+    } // put
+
+    /************************************************************************************
+     * Drop every cached result that has the given table as an input.
+     *
+     * @param table  the table that was modified
+     */
+    synchronized void invalidate (Table table)
+    {
+        Set <Key> keys = byTable.remove (table);
+        if (keys == null) return;
+        for (Key k : keys) {
+            Table t = results.remove (k);
+            if (t != null) {
+                forget (k, t);
+                invalidations++;
+            } // if
+        } // for
+    } // invalidate
+
+    /************************************************************************************
+     * Remove all cached results (statistics are kept).
+     */
+    public synchronized void clear ()
+    {
+        results.clear ();
+        byTable.clear ();
+        size = 0;
+    } // clear
+
+    /************************************************************************************
+     * Return the number of hits.
+     *
+     * @return  the hit count
+     */
+    public synchronized long getHits ()
+    {
+        return hits;
+    } // getHits
+
+    /************************************************************************************
+     * Return the number of misses.
+     *
+     * @return  the miss count
+     */
+    public synchronized long getMisses ()
+    {
+        return misses;
+    } // getMisses
+
+    /************************************************************************************
+     * Return the number of results evicted to stay within capacity.
+     *
+     * @return  the eviction count
+     */
+    public synchronized long getEvictions ()
+    {
+        return evictions;
+    } // getEvictions
+
+    /************************************************************************************
+     * Return the number of results dropped because an input table was modified.
+     *
+     * @return  the invalidation count
+     */
+    public synchronized long getInvalidations ()
+    {
+        return invalidations;
+    } // getInvalidations
+
+    /************************************************************************************
+     * Print the cache statistics.
+     */
+    public synchronized void printStats ()
+    {
+        long lookups = hits + misses;
+        out.println ("QueryCache: " + results.size () + " results, " + size + "/" + capacity + " tuples");
+        out.printf  ("  hits %d, misses %d (hit rate %.1f%%), evictions %d, invalidations %d%n",
+                     hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions, invalidations);
+    } // printStats
+
+    /************************************************************************************
+     * Remove the bookkeeping for a result that has left the cache.
+     *
+     * @param k  the key of the result
+     * @param t  the result table
+     */
+    private void forget (Key k, Table t)
+    {
+        size -= weight (t);
+        for (Table in : k.tables) {
+            Set <Key> keys = byTable.get (in);
+            if (keys != null && keys.remove (k) && keys.isEmpty ()) byTable.remove (in);
+        } // for
+    } // forget
+
+    /************************************************************************************
+     * Return the weight of a cached result (its tuples, plus one for the table).
+     *
+     * @param t  the result table
+     * @return  the weight
+     */
+    private static long weight (Table t)
+    {
+        return t.size () + 1;
+    } // weight
+
+} // QueryCache class
@@ -0,0 +1,472 @@
+/****************************************************************************************
+ * @file  QueryServer.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The QueryServer class serves a catalog of loaded tables to clients over a local TCP
+ * socket or a Unix domain socket.  Each client session runs on its own virtual thread
+ * (or a pooled platform thread when the JVM has no virtual threads).  Sessions send
+ * one command per line; tokens are separated by white space, so values may not
+ * contain spaces (the MovieDB data uses underscores instead).
+ * -  PROJECT t a1 a2 ...                 project t onto the attributes
+ * -  SELECT t attr op value              op is one of = != < <= > >=
+ * -  SELECTKEY t v1 v2 ...               select by primary key value
+ * -  JOIN t1 a1,a2,.. b1,b2,.. t2        equi-join (JOIN t1 t2 for a natural join)
+ * -  UNION t1 t2, MINUS t1 t2            set operators
+ * -  INSERT t v1 v2 ...                  insert a tuple
+ * -  QUIT                                end the session
+ * A query is answered by "OK" and the tab separated result attributes, the result
+ * tuples in batches, each introduced by "BATCH n", and "END n" with the tuple count.
+ * An insert is answered by "OK" and "END 1" (or "END 0" for a duplicate key).  A bad
+ * command is answered by "ERR" and a message.  Queries hold read locks and inserts
+ * hold write locks on the tables involved, taken in name order; result tuples are
+ * streamed after the locks are released.
+ */
+public class QueryServer
+       implements Closeable
+{
+    /** Number of tuples per result batch. */
+    private static final int BATCH = 256;
+
+    /** The tables served, by name. */
+    private final Map <String, Table> catalog = new ConcurrentHashMap <> ();
+    /** A read-write lock for each table, by name. */
+    private final Map <String, ReadWriteLock> locks = new ConcurrentHashMap <> ();
+    /** The listening channel. */
+    private final ServerSocketChannel server;
+    /** The executor running the client sessions. */
+    private final ExecutorService sessions = sessionExecutor ();
+    /** Number of commands executed. */
+    private final AtomicLong commands = new AtomicLong ();
+    /** The database whose tables are served as they finish loading (null if none). */
+    private volatile Database db;
+
+    /************************************************************************************
+     * Construct a server listening on the given address (see address).
+     * @param addr  the loopback or Unix domain socket address to listen on
+     */
+    public QueryServer (SocketAddress addr)
+           throws IOException
+    {
+        if (addr instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists (((UnixDomainSocketAddress) addr).getPath ());
+            server = ServerSocketChannel.open (StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open ();
+        } // if
+        server.bind (addr, 4096);
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Public Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Add a table to the catalog, replacing any table with the same name.
+     *
+     * @param table  the table to serve
+     */
+    public void add (Table table)
+    {
+        locks.putIfAbsent (table.getName (), new ReentrantReadWriteLock ());
+        catalog.put (table.getName (), table);
+    } // add
+
+    /************************************************************************************
+     * Serve every table of a database.  A session naming a table that is still
+     * loading waits for that table only.
+     *
+     * @param _db  the database to serve
+     */
+    public void add (Database _db)
+    {
+        db = _db;
+    } // add
+
+    /************************************************************************************
+     * Accept clients until the server is closed, running each session on its own thread.
+     */
+    public void serve ()
+    {
+        while (server.isOpen ()) {
+            try {
+                SocketChannel ch = server.accept ();
+                sessions.execute (() -> session (ch));
+            } catch (ClosedChannelException ex) {
+                break;
+            } catch (IOException ex) {
+                out.println ("serve: IO Exception");
+                ex.printStackTrace ();
+            } // try
+        } // while
+    } // serve
+
+    /************************************************************************************
+     * Return the number of commands executed so far.
+     *
+     * @return  the command count
+     */
+    public long getCommands ()
+    {
+        return commands.get ();
+    } // getCommands
+
+    /************************************************************************************
+     * Stop accepting clients and interrupt the running sessions.
+     */
+    public void close ()
+           throws IOException
+    {
+        server.close ();
+        sessions.shutdownNow ();
+    } // close
+
+    /************************************************************************************
+     * Create the executor for client sessions: one virtual thread per session when the
+     * JVM provides them (Java 21, or 19/20 with --enable-preview), otherwise a cached
+     * pool of platform threads.
+     *
+     * @return  the session executor
+     */
+    static ExecutorService sessionExecutor ()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod ("newVirtualThreadPerTaskExecutor").invoke (null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            return Executors.newCachedThreadPool (r -> {
+                Thread t = new Thread (r);
+                t.setDaemon (true);
+                return t;
+            });
+        } // try
+    } // sessionExecutor
+
+    /************************************************************************************
+     * Parse a server address: a port number means that port on the loopback interface,
+     * anything else is the path of a Unix domain socket.
+     *
+     * @param arg  the port number or socket path
+     * @return  the socket address
+     */
+    static SocketAddress address (String arg)
+    {
+        if (arg.matches ("\\d+")) return new InetSocketAddress (InetAddress.getLoopbackAddress (), Integer.parseInt (arg));
+        return UnixDomainSocketAddress.of (arg);
+    } // address
+
+    /************************************************************************************
+     * Open a client connection to a server at the given address (see address).
+     *
+     * @param addr  the server's address
+     * @return  the connected channel
+     */
+    static SocketChannel connect (SocketAddress addr)
+           throws IOException
+    {
+        if (addr instanceof UnixDomainSocketAddress) {
+            SocketChannel ch = SocketChannel.open (StandardProtocolFamily.UNIX);
+            ch.connect (addr);
+            return ch;
+        } // if
+        return SocketChannel.open (addr);
+    } // connect
+
+    /************************************************************************************
+     * Serve the tables in the store directory with the given names, or all of them
+     * (see Database) when no names are given.
+     *
+     * #usage java QueryServer 5433 movie cinema movieStar starsIn movieExec studio
+     * #usage java QueryServer /tmp/moviedb.sock
+     *
+     * @param args  the port number or socket path, optionally followed by table names
+     */
+    public static void main (String [] args)
+           throws IOException
+    {
+        if (args.length < 1) {
+            out.println ("usage: java QueryServer <port | socket path> [table ...]");
+            return;
+        } // if
+        Table.setTrace (false);
+        QueryServer qs = new QueryServer (address (args [0]));
+        if (args.length == 1) {
+            Database db = Database.open ();
+            qs.add (db);
+            out.println ("QueryServer: serving " + db.getNames () + " on " + args [0]);
+            qs.serve ();
+            return;
+        } // if
+        for (int i = 1; i < args.length; i++) {
+            boolean seg = new File (Table.DIR + args [i] + Table.SEG).exists ();
+            Table t = seg ? Table.loadMapped (args [i]) : Table.load (args [i]);
+            if (t != null) qs.add (t);
+        } // for
+        out.println ("QueryServer: serving " + qs.catalog.keySet () + " on " + args [0]);
+        qs.serve ();
+    } // main
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Run a client session: read commands until QUIT or end of stream.
+     *
+     * @param ch  the client's channel
+     */
+    private void session (SocketChannel ch)
+    {
+        try (ch;
+             BufferedReader in  = new BufferedReader (new InputStreamReader (Channels.newInputStream (ch),
+                                                                              StandardCharsets.UTF_8));
+             PrintWriter    rep = new PrintWriter (new BufferedWriter (new OutputStreamWriter (
+                                                     Channels.newOutputStream (ch), StandardCharsets.UTF_8)))) {
+            for (String line; (line = in.readLine ()) != null; ) {
+                String [] cmd = line.trim ().split ("\\s+");
+                if (cmd [0].equalsIgnoreCase ("QUIT")) break;
+                if (cmd [0].isEmpty ()) continue;
+                commands.incrementAndGet ();
+                try {
+                    execute (cmd, rep);
+                } catch (IllegalArgumentException | ClassCastException ex) {
+                    rep.println ("ERR " + ex.getMessage ());
+                } catch (RuntimeException ex) {                          // an operator failed
+                    rep.println ("ERR " + ex);
+                } // try
+                rep.flush ();
+            } // for
+        } catch (IOException ex) {
+            // the client went away
+        } // try
+    } // session
+
+    /************************************************************************************
+     * Execute a command and write its reply.
+     *
+     * @param cmd  the command tokens
+     * @param rep  where to write the reply
+     */
+    private void execute (String [] cmd, PrintWriter rep)
+    {
+        String op = cmd [0].toUpperCase ();
+        if (cmd.length < 2) throw new IllegalArgumentException (op + ": missing table name");
+        Table t1 = table (cmd [1]);
+        Table result;
+
+        switch (op) {
+        case "INSERT":
+            if (cmd.length - 2 != t1.getAttribute ().length) {
+                throw new IllegalArgumentException ("INSERT: expected " + t1.getAttribute ().length + " values");
+            } // if
+            Class [] dom = t1.getDomain ();
+            Comparable [] tup = new Comparable [dom.length];
+            for (int j = 0; j < tup.length; j++) tup [j] = parse (cmd [j + 2], dom [j]);
+            boolean ok;
+            Lock w = locks.get (t1.getName ()).writeLock ();
+            w.lock ();
+            try {
+                ok = ! t1.containsKey (tup) && t1.insert (tup);
+            } finally {
+                w.unlock ();
+            } // try
+            rep.println ("OK");
+            rep.println ("END " + (ok ? 1 : 0));
+            return;
+
+        case "PROJECT":
+            if (cmd.length < 3) throw new IllegalArgumentException ("PROJECT: missing attributes");
+            String attrs = String.join (" ", Arrays.copyOfRange (cmd, 2, cmd.length));
+            checkAttributes (t1, attrs);
+            result = query (() -> t1.project (attrs), t1);
+            break;
+
+        case "SELECT":
+            if (cmd.length != 5) throw new IllegalArgumentException ("SELECT: expected SELECT t attr op value");
+            int c = column (t1, cmd [2]);
+            Comparable v = parse (cmd [4], t1.getDomain () [c]);
+            if (cmd [3].equals ("=")) {
+                result = query (() -> t1.select (cmd [2], v), t1);
+            } else {
+                result = query (() -> t1.select (cmd [2], cmd [3], v), t1);
+            } // if
+            break;
+
+        case "SELECTKEY":
+            String [] key = t1.getKey ();
+            if (cmd.length - 2 != key.length) throw new IllegalArgumentException ("SELECTKEY: expected " + key.length + " values");
+            Comparable [] kv = new Comparable [key.length];
+            for (int j = 0; j < kv.length; j++) kv [j] = parse (cmd [j + 2], t1.getDomain () [column (t1, key [j])]);
+            result = query (() -> t1.select (new KeyType (kv)), t1);
+            break;
+
+        case "JOIN":
+            if (cmd.length == 3) {
+                Table t2 = table (cmd [2]);
+                result = query (() -> t1.join (t2), t1, t2);
+            } else if (cmd.length == 5) {
+                Table  t2 = table (cmd [4]);
+                String a1 = cmd [2].replace (',', ' '), a2 = cmd [3].replace (',', ' ');
+                checkAttributes (t1, a1);
+                checkAttributes (t2, a2);
+                if (a1.split (" ").length != a2.split (" ").length) throw new IllegalArgumentException ("JOIN: attribute counts differ");
+                result = query (() -> t1.join (a1, a2, t2), t1, t2);
+            } else {
+                throw new IllegalArgumentException ("JOIN: expected JOIN t1 a1,.. b1,.. t2 or JOIN t1 t2");
+            } // if
+            break;
+
+        case "UNION":
+        case "MINUS":
+            if (cmd.length != 3) throw new IllegalArgumentException (op + ": expected " + op + " t1 t2");
+            Table t2 = table (cmd [2]);
+            if (! Arrays.equals (t1.getDomain (), t2.getDomain ())) throw new IllegalArgumentException (op + ": incompatible tables");
+            result = op.equals ("UNION") ? query (() -> t1.union (t2), t1, t2)
+                                         : query (() -> t1.minus (t2), t1, t2);
+            break;
+
+        default:
+            throw new IllegalArgumentException ("unknown command " + cmd [0]);
+        } // switch
+
+        stream (result, rep);
+    } // execute
+
+    /************************************************************************************
+     * Run a query holding read locks on its input tables, taken in name order.
+     *
+     * @param q       the query
+     * @param tables  the input tables
+     * @return  the result table
+     */
+    private Table query (Callable <Table> q, Table ... tables)
+    {
+        TreeSet <String> names = new TreeSet <> ();
+        for (Table t : tables) names.add (t.getName ());
+        List <Lock> held = new ArrayList <> ();
+        try {
+            for (String n : names) {
+                Lock r = locks.get (n).readLock ();
+                r.lock ();
+                held.add (r);
+            } // for
+            return q.call ();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalArgumentException (ex.toString ());
+        } finally {
+            for (Lock r : held) r.unlock ();
+        } // try
+    } // query
+
+    /************************************************************************************
+     * Write a result table: its attributes, its tuples in batches, and its size.
+     *
+     * @param result  the result table
+     * @param rep     where to write the reply
+     */
+    private static void stream (Table result, PrintWriter rep)
+    {
+        rep.println ("OK " + String.join ("\t", result.getAttribute ()));
+        List <Comparable []> rows = result.rows ();
+        StringBuilder sb = new StringBuilder ();
+        for (int i = 0; i < rows.size (); i += BATCH) {
+            int n = Math.min (BATCH, rows.size () - i);
+            rep.println ("BATCH " + n);
+            for (int r = i; r < i + n; r++) {
+                Comparable [] t = rows.get (r);
+                sb.setLength (0);
+                for (int j = 0; j < t.length; j++) {
+                    if (j > 0) sb.append ('\t');
+                    sb.append (t [j]);
+                } // for
+                rep.println (sb);
+            } // for
+            rep.flush ();
+        } // for
+        rep.println ("END " + rows.size ());
+    } // stream
+
+    /************************************************************************************
+     * Return the table in the catalog with the given name.
+     *
+     * @param name  the table name
+     * @return  the table
+     */
+    private Table table (String name)
+    {
+        Table t = catalog.get (name);
+        if (t == null && db != null && (t = db.get (name)) != null) add (t);
+        if (t == null) throw new IllegalArgumentException ("no table " + name);
+        return t;
+    } // table
+
+    /************************************************************************************
+     * Return the column position of the given attribute in table t.
+     *
+     * @param t     the table
+     * @param attr  the attribute name
+     * @return  the column position
+     */
+    private static int column (Table t, String attr)
+    {
+        int c = t.col (attr);
+        if (c < 0) throw new IllegalArgumentException ("no attribute " + attr + " in " + t.getName ());
+        return c;
+    } // column
+
+    /************************************************************************************
+     * Check that all the given attributes belong to table t.
+     *
+     * @param t      the table
+     * @param attrs  the space separated attribute names
+     */
+    private static void checkAttributes (Table t, String attrs)
+    {
+        for (String a : attrs.split (" ")) column (t, a);
+    } // checkAttributes
+
+    /************************************************************************************
+     * Parse a value of the given domain.
+     *
+     * @param s    the value as text
+     * @param dom  the domain (data type)
+     * @return  the value
+     */
+    static Comparable parse (String s, Class dom)
+    {
+        try {
+            switch (dom.getSimpleName ()) {
+            case "Integer":   return Integer.valueOf (s);
+            case "Long":      return Long.valueOf (s);
+            case "Short":     return Short.valueOf (s);
+            case "Byte":      return Byte.valueOf (s);
+            case "Double":    return Double.valueOf (s);
+            case "Float":     return Float.valueOf (s);
+            case "Boolean":   return Boolean.valueOf (s);
+            case "Character":
+                if (s.length () != 1) throw new IllegalArgumentException ("bad Character " + s);
+                return s.charAt (0);
+            default:          return s;
+            } // switch
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException ("bad " + dom.getSimpleName () + " " + s);
+        } // try
+    } // parse
+
+} // QueryServer class
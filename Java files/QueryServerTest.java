@@ -0,0 +1,103 @@
+/****************************************************************************************
+ * @file  QueryServerTest.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The QueryServerTest class checks the replies of a QueryServer to good and bad
+ * commands over one session.
+ *
+ * #usage java -ea QueryServerTest
+ */
+class QueryServerTest
+{
+    /** Number of checks passed. */
+    private static int passed = 0;
+    /** The session's request stream. */
+    private static PrintWriter req;
+    /** The session's reply stream. */
+    private static BufferedReader in;
+
+    /************************************************************************************
+     * Run the checks, failing on the first that does not hold.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+           throws Exception
+    {
+        Table.setTrace (false);
+        Table studio = new Table ("studio", "name address presNo", "String String Integer", "name");
+        studio.insert (new Comparable [] { "Fox", "Los_Angeles", 7777 });
+        studio.insert (new Comparable [] { "Universal", "Universal_City", 8888 });
+        Table movie = new Table ("movie", "title year genre", "String Integer String", "title year");
+        for (int i = 0; i < 10; i++) movie.insert (new Comparable [] { "m" + i, 1970 + i, "drama" });
+
+        Path          sock = Files.createTempFile ("QueryServerTest", ".sock");
+        SocketAddress addr = QueryServer.address (sock.toString ());
+        QueryServer   qs   = new QueryServer (addr);
+        qs.add (studio);
+        qs.add (movie);
+        Thread server = new Thread (qs::serve);
+        server.setDaemon (true);
+        server.start ();
+
+        try (SocketChannel ch = QueryServer.connect (addr)) {
+            in  = new BufferedReader (new InputStreamReader (Channels.newInputStream (ch), StandardCharsets.UTF_8));
+            req = new PrintWriter (new OutputStreamWriter (Channels.newOutputStream (ch), StandardCharsets.UTF_8), true);
+
+            check (send ("SELECT movie year < 1975") == 5, "range select");
+            check (send ("SELECT movie year ~ 1975") == -1, "unknown comparison is an error");
+            check (send ("UNION studio studio") == -1, "failing operator is an error");
+            check (send ("SELECTKEY studio Fox") == 1, "session goes on after an error");
+            check (send ("INSERT studio Fox Burbank 1") == 0, "duplicate key is rejected");
+            check (send ("SELECT studio address = Burbank") == 0, "duplicate is not stored");
+            check (send ("INSERT studio Disney Burbank 9999") == 1, "new key is inserted");
+            check (send ("SELECT studio address = Burbank") == 1, "new tuple is stored");
+            check (send ("INSERT nope 1") == -1, "unknown table is an error");
+            req.println ("QUIT");
+        } finally {
+            qs.close ();
+            Files.deleteIfExists (sock);
+        } // try
+        out.println ("QueryServerTest: " + passed + " checks passed");
+    } // main
+
+    /************************************************************************************
+     * Send a command and read its reply.
+     *
+     * @param cmd  the command
+     * @return  the count in the reply's END line, or -1 for an ERR reply
+     */
+    private static long send (String cmd)
+            throws IOException
+    {
+        req.println (cmd);
+        for (String line; (line = in.readLine ()) != null; ) {
+            if (line.startsWith ("ERR")) return -1;
+            if (line.startsWith ("END ")) return Long.parseLong (line.substring (4));
+        } // for
+        throw new EOFException ("server closed the session after " + cmd);
+    } // send
+
+    /************************************************************************************
+     * Check that a condition holds.
+     *
+     * @param cond  the condition
+     * @param what  what is checked
+     */
+    private static void check (boolean cond, String what)
+    {
+        if (! cond) throw new AssertionError ("QueryServerTest: " + what);
+        passed++;
+    } // check
+
+} // QueryServerTest class
@@ -0,0 +1,903 @@
+/****************************************************************************************
+ * @file  SegmentFile.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The SegmentFile class implements the compressed on-disk format for tables.  The file
+ * holds a header (schema and column dictionaries), the tuples split into row groups of
+ * up to GROUP rows, a primary key index, and a trailing directory locating each column
+ * chunk of each group and the key index.  Every column chunk is encoded on its own, so
+ * a reader may decode only the columns a query needs:
+ * -  INTEGER columns and dictionary codes: the smallest of run-length, frame-of-reference
+ * -  bit-packing and delta bit-packing
+ * -  Long, Double and Float columns: raw fixed width values
+ * -  Any chunk holding a null: Java serialization of the values
+ * The key index holds one fixed width entry per key value, sorted by key: the key
+ * fields (dictionary codes for STRING columns) and the row number.  A mapped segment
+ * file (see map) finds a key by binary search over the mapped entries and decodes only
+ * the row group holding it.  Files written before the key index ("DBC1") are still read.
+ */
+class SegmentFile
+{
+    /** Magic number identifying segment files ("DBC2"; "DBC1" has no key index). */
+    private static final int MAGIC = 0x44424332, MAGIC1 = 0x44424331;
+    /** Maximum size of a mapped window of the file. */
+    private static final long WINDOW = 1L << 30;
+    /** Maximum number of rows in a row group. */
+    static final int GROUP = 1 << 16;
+    /** Chunk encodings. */
+    private static final byte PLAIN = 0, RLE = 1, FOR = 2, DELTA = 3, OBJECT = 4;
+
+    /** Path of the segment file. */
+    private final String path;
+    /** Table name. */
+    final String name;
+    /** Array of attribute names. */
+    final String [] attribute;
+    /** Array of attribute domains. */
+    final Class [] domain;
+    /** Primary key(s). */
+    final String [] key;
+    /** Dictionaries for the STRING domain columns (null for other domains). */
+    final ColumnDictionary [] dict;
+    /** Number of rows in each row group. */
+    final int [] groupRows;
+    /** File offset of each column chunk (group, column). */
+    private final long [][] offset;
+    /** Byte length of each column chunk (group, column). */
+    private final int [][] length;
+    /** File offset of the key index. */
+    private long indexPos = 0;
+    /** Width of a key index entry in bytes (0 when there is no key index). */
+    private int indexWidth = 0;
+    /** Number of key index entries. */
+    private int indexCount = 0;
+    /** Column positions of the key attributes. */
+    private final int [] keyCols;
+    /** Mapped windows of the row groups (null until mapped). */
+    private MappedByteBuffer [] data;
+    /** Window holding each row group. */
+    private int [] windowOf;
+    /** File offset at which each window starts. */
+    private long [] windowPos;
+    /** Mapped windows of the key index (null until mapped). */
+    private MappedByteBuffer [] keys;
+    /** Number of key index entries per window. */
+    private int perWindow;
+
+    /************************************************************************************
+     * Open a segment file, reading its header and directory but no column chunks.
+     * @param _path  the path of the segment file
+     */
+    private SegmentFile (String _path)
+        throws IOException
+    {
+        path = _path;
+        int magic;
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (path)))) {
+            magic = in.readInt ();
+            if (magic != MAGIC && magic != MAGIC1) throw new IOException ("not a segment file: " + path);
+            name      = in.readUTF ();
+            attribute = new String [in.readInt ()];
+            domain    = new Class [attribute.length];
+            dict      = new ColumnDictionary [attribute.length];
+            for (int j = 0; j < attribute.length; j++) {
+                attribute [j] = in.readUTF ();
+                try {
+                    domain [j] = Class.forName ("java.lang." + in.readUTF ());
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException (ex);
+                } // try
+            } // for
+            key = new String [in.readInt ()];
+            for (int j = 0; j < key.length; j++) key [j] = in.readUTF ();
+            keyCols = match (key);
+            for (int j = 0; j < attribute.length; j++) {
+                if (! in.readBoolean ()) continue;
+                dict [j] = new ColumnDictionary ();
+                for (int n = in.readInt (), c = 0; c < n; c++) {
+                    dict [j].encode (domain [j] == Character.class ? (Comparable) in.readChar ()
+                                                                   : (Comparable) in.readUTF ());
+                } // for
+            } // for
+        } // try
+
+        try (RandomAccessFile raf = new RandomAccessFile (path, "r")) {
+            raf.seek (raf.length () - 8);
+            long dirOffset = raf.readLong ();
+            byte [] dir = new byte [(int) (raf.length () - 8 - dirOffset)];
+            raf.seek (dirOffset);
+            raf.readFully (dir);
+
+            ByteBuffer buf = ByteBuffer.wrap (dir);
+            groupRows = new int [buf.getInt ()];
+            offset    = new long [groupRows.length][attribute.length];
+            length    = new int [groupRows.length][attribute.length];
+            for (int g = 0; g < groupRows.length; g++) {
+                groupRows [g] = buf.getInt ();
+                for (int j = 0; j < attribute.length; j++) {
+                    offset [g][j] = buf.getLong ();
+                    length [g][j] = buf.getInt ();
+                } // for
+            } // for
+            if (magic == MAGIC) {
+                indexPos   = buf.getLong ();
+                indexWidth = buf.getInt ();
+                indexCount = buf.getInt ();
+            } // if
+        } // try
+    } // constructor
+
+    //----------------------------------------------------------------------------------
+    // Reading
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Open the segment file at the given path.
+     *
+     * @param path  the path of the segment file
+     * @return  the opened segment file
+     */
+    static SegmentFile open (String path)
+        throws IOException
+    {
+        return new SegmentFile (path);
+    } // open
+
+    /************************************************************************************
+     * Return the column positions of the given attribute names.
+     *
+     * @param attrs  the attribute names
+     * @return  an array of column positions (-1 for names not found)
+     */
+    int [] match (String [] attrs)
+    {
+        int [] cols = new int [attrs.length];
+        for (int j = 0; j < attrs.length; j++) {
+            cols [j] = Arrays.asList (attribute).indexOf (attrs [j]);
+        } // for
+        return cols;
+    } // match
+
+    /************************************************************************************
+     * Return the total number of rows in the segment file.
+     *
+     * @return  the number of rows
+     */
+    int rows ()
+    {
+        int n = 0;
+        for (int r : groupRows) n += r;
+        return n;
+    } // rows
+
+    /************************************************************************************
+     * Read the given columns of every row group.
+     *
+     * @param cols  the column positions to decode
+     * @return  the list of (projected) tuples
+     */
+    List <Comparable []> read (int [] cols)
+        throws IOException
+    {
+        List <Comparable []> rows = new ArrayList <> (rows ());
+        try (RandomAccessFile raf = new RandomAccessFile (path, "r")) {
+            for (int g = 0; g < groupRows.length; g++) rows.addAll (Arrays.asList (readGroup (raf, g, cols)));
+        } // try
+        return rows;
+    } // read
+
+    /************************************************************************************
+     * Read the given columns of row group g.
+     *
+     * @param raf   the open segment file
+     * @param g     the row group
+     * @param cols  the column positions to decode
+     * @return  the (projected) tuples of the row group
+     */
+    Comparable [][] readGroup (RandomAccessFile raf, int g, int [] cols)
+        throws IOException
+    {
+        Comparable [][] rows = new Comparable [groupRows [g]][cols.length];
+        for (int j = 0; j < cols.length; j++) {
+            byte [] chunk = new byte [length [g][cols [j]]];
+            raf.seek (offset [g][cols [j]]);
+            raf.readFully (chunk);
+            Comparable [] vals = decode (ByteBuffer.wrap (chunk), rows.length, domain [cols [j]], dict [cols [j]]);
+            for (int i = 0; i < rows.length; i++) rows [i][j] = vals [i];
+        } // for
+        return rows;
+    } // readGroup
+
+    //----------------------------------------------------------------------------------
+    // Mapped reading
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Return whether the file has a key index.
+     *
+     * @return  whether keys can be looked up
+     */
+    boolean hasKeyIndex ()
+    {
+        return indexWidth > 0;
+    } // hasKeyIndex
+
+    /************************************************************************************
+     * Map the row groups and the key index into memory.  Nothing is read yet: pages
+     * are brought in by the operating system as they are first touched.  Row groups
+     * are mapped in windows of whole groups, so no column chunk straddles two windows.
+     */
+    void map ()
+        throws IOException
+    {
+        try (FileChannel ch = FileChannel.open (Paths.get (path), StandardOpenOption.READ)) {
+            List <MappedByteBuffer> win = new ArrayList <> ();
+            List <Long>             pos = new ArrayList <> ();
+            windowOf = new int [groupRows.length];
+            for (int g = 0; g < groupRows.length; ) {
+                long from = start (g), to = end (g);
+                int  h    = g + 1;
+                while (h < groupRows.length && end (h) - from <= WINDOW) to = end (h++);
+                win.add (ch.map (FileChannel.MapMode.READ_ONLY, from, to - from));
+                pos.add (from);
+                for (; g < h; g++) windowOf [g] = win.size () - 1;
+            } // for
+            data      = win.toArray (new MappedByteBuffer [0]);
+            windowPos = pos.stream ().mapToLong (Long::longValue).toArray ();
+
+            if (indexWidth > 0) {
+                perWindow = (int) (WINDOW / indexWidth);
+                keys      = new MappedByteBuffer [(indexCount + perWindow - 1) / perWindow];
+                for (int w = 0; w < keys.length; w++) {
+                    int n = Math.min (perWindow, indexCount - w * perWindow);
+                    keys [w] = ch.map (FileChannel.MapMode.READ_ONLY, indexPos + (long) w * perWindow * indexWidth,
+                                       (long) n * indexWidth);
+                } // for
+            } // if
+        } // try
+    } // map
+
+    /************************************************************************************
+     * Decode all columns of row group g from the mapped file.
+     *
+     * @param g  the row group
+     * @return  the tuples of the row group
+     */
+    Comparable [][] mappedGroup (int g)
+        throws IOException
+    {
+        Comparable [][] rows = new Comparable [groupRows [g]][attribute.length];
+        for (int j = 0; j < attribute.length; j++) {
+            ByteBuffer chunk = data [windowOf [g]].duplicate ();
+            int        p     = (int) (offset [g][j] - windowPos [windowOf [g]]);
+            chunk.position (p).limit (p + length [g][j]);
+            Comparable [] vals = decode (chunk.slice (), rows.length, domain [j], dict [j]);
+            for (int i = 0; i < rows.length; i++) rows [i][j] = vals [i];
+        } // for
+        return rows;
+    } // mappedGroup
+
+    /************************************************************************************
+     * Return the number of key index entries.
+     *
+     * @return  the number of distinct keys
+     */
+    int keyCount ()
+    {
+        return indexCount;
+    } // keyCount
+
+    /************************************************************************************
+     * Find the row with the given key value by binary search over the mapped key index.
+     *
+     * @param keyVal  the key value
+     * @return  the row number, or -1 if absent
+     */
+    @SuppressWarnings("unchecked")
+    int find (Comparable [] keyVal)
+    {
+        int lo = 0, hi = indexCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = 0;
+            for (int j = 0; j < keyCols.length && cmp == 0; j++) cmp = keyVal [j].compareTo (keyValue (mid, j));
+            if      (cmp > 0) lo = mid + 1;
+            else if (cmp < 0) hi = mid - 1;
+            else              return keyRow (mid);
+        } // while
+        return -1;
+    } // find
+
+    /************************************************************************************
+     * Return the value of key attribute j in key index entry k.
+     *
+     * @param k  the entry number (in key order)
+     * @param j  the key attribute number
+     * @return  the key value
+     */
+    Comparable keyValue (int k, int j)
+    {
+        ByteBuffer b = keys [k / perWindow];
+        int        p = (k % perWindow) * indexWidth;
+        for (int i = 0; i < j; i++) p += keyWidth (keyCols [i]);
+
+        int   c   = keyCols [j];
+        Class dom = domain [c];
+        if (dict [c] != null)       return dict [c].decode (b.getInt (p));
+        if (dom == Long.class)      return b.getLong (p);
+        if (dom == Double.class)    return Double.longBitsToDouble (b.getLong (p));
+        if (dom == Float.class)     return Float.intBitsToFloat (b.getInt (p));
+        if (dom == Short.class)     return (short) b.getInt (p);
+        if (dom == Byte.class)      return (byte) b.getInt (p);
+        return b.getInt (p);
+    } // keyValue
+
+    /************************************************************************************
+     * Return the row number in key index entry k.
+     *
+     * @param k  the entry number (in key order)
+     * @return  the row number
+     */
+    int keyRow (int k)
+    {
+        return keys [k / perWindow].getInt ((k % perWindow) * indexWidth + indexWidth - 4);
+    } // keyRow
+
+    /************************************************************************************
+     * Return the first file offset of row group g.
+     *
+     * @param g  the row group
+     * @return  the offset of its first column chunk
+     */
+    private long start (int g)
+    {
+        return offset [g][0];
+    } // start
+
+    /************************************************************************************
+     * Return the file offset just past row group g.
+     *
+     * @param g  the row group
+     * @return  the end of its last column chunk
+     */
+    private long end (int g)
+    {
+        int j = attribute.length - 1;
+        return offset [g][j] + length [g][j];
+    } // end
+
+    /************************************************************************************
+     * Return the width in bytes of key column c in a key index entry, or 0 if its
+     * domain cannot be indexed.
+     *
+     * @param c  the column position
+     * @return  the field width
+     */
+    private int keyWidth (int c)
+    {
+        return keyWidth (domain [c], dict [c] != null);
+    } // keyWidth
+
+    /************************************************************************************
+     * Return the width in bytes of a key field of the given domain, or 0 if the domain
+     * cannot be indexed.
+     *
+     * @param dom      the column domain
+     * @param encoded  whether the column is dictionary encoded
+     * @return  the field width
+     */
+    private static int keyWidth (Class dom, boolean encoded)
+    {
+        if (encoded || dom == Integer.class || dom == Short.class || dom == Byte.class || dom == Float.class) return 4;
+        if (dom == Long.class || dom == Double.class) return 8;
+        return 0;
+    } // keyWidth
+
+    //----------------------------------------------------------------------------------
+    // Writing
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Write the given table contents to a segment file.  Dictionaries are rebuilt from
+     * the values present, so values only reachable through a shared dictionary are not
+     * written.
+     *
+     * @param path       the path of the segment file
+     * @param name       the table name
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param key        the primary key
+     * @param tuples     the tuples to write
+     */
+    static void write (String path, String name, String [] attribute, Class [] domain, String [] key,
+                       List <Comparable []> tuples)
+        throws IOException
+    {
+        ColumnDictionary [] dict = new ColumnDictionary [attribute.length];
+        for (int j = 0; j < attribute.length; j++) {
+            if (domain [j] != String.class && domain [j] != Character.class) continue;
+            dict [j] = new ColumnDictionary ();
+            for (Comparable [] t : tuples) if (t [j] != null) dict [j].encode (t [j]);
+        } // for
+
+        ByteArrayOutputStream hdr = new ByteArrayOutputStream ();
+        DataOutputStream h = new DataOutputStream (hdr);
+        h.writeInt (MAGIC);
+        h.writeUTF (name);
+        h.writeInt (attribute.length);
+        for (int j = 0; j < attribute.length; j++) {
+            h.writeUTF (attribute [j]);
+            h.writeUTF (domain [j].getSimpleName ());
+        } // for
+        h.writeInt (key.length);
+        for (String k : key) h.writeUTF (k);
+        for (int j = 0; j < attribute.length; j++) {
+            h.writeBoolean (dict [j] != null);
+            if (dict [j] == null) continue;
+            h.writeInt (dict [j].size ());
+            for (int c = 0; c < dict [j].size (); c++) {
+                if (domain [j] == Character.class) h.writeChar ((Character) dict [j].decode (c));
+                else                               h.writeUTF ((String) dict [j].decode (c));
+            } // for
+        } // for
+        h.flush ();
+
+        int groups = (tuples.size () + GROUP - 1) / GROUP;
+        ByteArrayOutputStream dirBytes = new ByteArrayOutputStream ();
+        DataOutputStream dir = new DataOutputStream (dirBytes);
+        dir.writeInt (groups);
+
+        try (OutputStream os = new BufferedOutputStream (new FileOutputStream (path))) {
+            hdr.writeTo (os);
+            long pos = hdr.size ();
+            for (int g = 0; g < groups; g++) {
+                int from = g * GROUP, to = Math.min (from + GROUP, tuples.size ());
+                dir.writeInt (to - from);
+                for (int j = 0; j < attribute.length; j++) {
+                    byte [] chunk = encode (tuples, from, to, j, domain [j], dict [j]);
+                    os.write (chunk);
+                    dir.writeLong (pos);
+                    dir.writeInt (chunk.length);
+                    pos += chunk.length;
+                } // for
+            } // for
+
+            byte [] index = keyIndex (attribute, domain, key, tuples, dict);
+            os.write (index);
+            dir.writeLong (pos);
+            int width = 4;
+            for (String k : key) {
+                int c = Arrays.asList (attribute).indexOf (k);
+                width += keyWidth (domain [c], dict [c] != null);
+            } // for
+            dir.writeInt (index.length == 0 ? 0 : width);
+            dir.writeInt (index.length / width);
+            pos += index.length;
+
+            dir.writeLong (pos);
+            dir.flush ();
+            dirBytes.writeTo (os);
+        } // try
+    } // write
+
+    /************************************************************************************
+     * Build the key index: one entry per distinct key value, in key order, holding the
+     * key fields and the number of the last row with that key (as the in-memory index
+     * keeps the last tuple inserted).  No index is built when a key attribute has a
+     * domain that cannot be indexed or a null value.
+     *
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param key        the primary key
+     * @param tuples     the tuples
+     * @param dict       the column dictionaries
+     * @return  the key index entries (empty when there is no index)
+     */
+    @SuppressWarnings("unchecked")
+    private static byte [] keyIndex (String [] attribute, Class [] domain, String [] key,
+                                     List <Comparable []> tuples, ColumnDictionary [] dict)
+        throws IOException
+    {
+        int [] kc = new int [key.length];
+        for (int j = 0; j < key.length; j++) {
+            kc [j] = Arrays.asList (attribute).indexOf (key [j]);
+            if (kc [j] < 0 || keyWidth (domain [kc [j]], dict [kc [j]] != null) == 0) return new byte [0];
+        } // for
+        for (Comparable [] t : tuples) for (int c : kc) if (t [c] == null) return new byte [0];
+
+        Integer [] order = new Integer [tuples.size ()];
+        for (int i = 0; i < order.length; i++) order [i] = i;
+        Comparator <Integer> byKey = (a, b) -> {
+            for (int c : kc) {
+                int cmp = tuples.get (a) [c].compareTo (tuples.get (b) [c]);
+                if (cmp != 0) return cmp;
+            } // for
+            return 0;
+        };
+        Arrays.sort (order, byKey);                                   // stable: equal keys in row order
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream      out   = new DataOutputStream (bytes);
+        ByteBuffer            entry = ByteBuffer.allocate (4 + 8 * kc.length);
+        for (int k = 0; k < order.length; k++) {
+            if (k + 1 < order.length && byKey.compare (order [k], order [k + 1]) == 0) continue;
+            Comparable [] t = tuples.get (order [k]);
+            entry.clear ();
+            for (int c : kc) {
+                Comparable v = t [c];
+                if      (dict [c] != null)          entry.putInt (dict [c].code (v));
+                else if (domain [c] == Long.class)   entry.putLong ((Long) v);
+                else if (domain [c] == Double.class) entry.putLong (Double.doubleToLongBits ((Double) v));
+                else if (domain [c] == Float.class)  entry.putInt (Float.floatToIntBits ((Float) v));
+                else                                 entry.putInt (((Number) v).intValue ());
+            } // for
+            entry.putInt (order [k]);
+            out.write (entry.array (), 0, entry.position ());
+        } // for
+        out.flush ();
+        return bytes.toByteArray ();
+    } // keyIndex
+
+    //----------------------------------------------------------------------------------
+    // Column chunk encoding
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Encode column j of tuples [from, to) as a column chunk.
+     *
+     * @param tuples  the tuples
+     * @param from    the first row (inclusive)
+     * @param to      the last row (exclusive)
+     * @param j       the column position
+     * @param dom     the column domain
+     * @param d       the column dictionary (null if not dictionary encoded)
+     * @return  the encoded chunk, starting with its encoding tag
+     */
+    private static byte [] encode (List <Comparable []> tuples, int from, int to, int j,
+                                   Class dom, ColumnDictionary d)
+        throws IOException
+    {
+        int n = to - from;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream out = new DataOutputStream (bytes);
+
+        for (int i = from; i < to; i++) {
+            if (tuples.get (i) [j] == null) {
+                Comparable [] vals = new Comparable [n];
+                for (int k = 0; k < n; k++) vals [k] = tuples.get (from + k) [j];
+                out.writeByte (OBJECT);
+                ObjectOutputStream oos = new ObjectOutputStream (out);
+                oos.writeObject (vals);
+                oos.flush ();
+                return bytes.toByteArray ();
+            } // if
+        } // for
+
+        if (d != null || dom == Integer.class || dom == Short.class || dom == Byte.class) {
+            int [] v = new int [n];
+            for (int k = 0; k < n; k++) {
+                Comparable x = tuples.get (from + k) [j];
+                v [k] = (d != null) ? d.code (x) : ((Number) x).intValue ();
+            } // for
+            byte [] best = rle (v);
+            byte [] b    = frameOfRef (v);
+            if (b.length < best.length) best = b;
+            b = delta (v);
+            if (b.length < best.length) best = b;
+            return best;
+        } // if
+
+        out.writeByte (PLAIN);
+        for (int k = 0; k < n; k++) {
+            Comparable x = tuples.get (from + k) [j];
+            if      (dom == Long.class)   out.writeLong ((Long) x);
+            else if (dom == Double.class) out.writeDouble ((Double) x);
+            else if (dom == Float.class)  out.writeFloat ((Float) x);
+            else throw new IOException ("encode: unsupported domain " + dom);
+        } // for
+        out.flush ();
+        return bytes.toByteArray ();
+    } // encode
+
+    /************************************************************************************
+     * Decode a column chunk.
+     *
+     * @param buf  the chunk bytes, starting with the encoding tag
+     * @param n    the number of values in the chunk
+     * @param dom  the column domain
+     * @param d    the column dictionary (null if not dictionary encoded)
+     * @return  the decoded column values (canonical instances for a dictionary column)
+     */
+    static Comparable [] decode (ByteBuffer buf, int n, Class dom, ColumnDictionary d)
+        throws IOException
+    {
+        Comparable [] vals = new Comparable [n];
+        byte tag = buf.get ();
+
+        if (tag == OBJECT) {
+            byte [] rest = new byte [buf.remaining ()];
+            buf.get (rest);
+            try (ObjectInputStream ois = new ObjectInputStream (new ByteArrayInputStream (rest))) {
+                vals = (Comparable []) ois.readObject ();
+                if (d != null) {                                         // canonical instances, as
+                    for (int k = 0; k < n; k++) {                        // selects compare by reference
+                        if (vals [k] != null) vals [k] = d.intern (vals [k]);
+                    } // for
+                } // if
+                return vals;
+            } catch (ClassNotFoundException ex) {
+                throw new IOException (ex);
+            } // try
+        } // if
+
+        if (tag == PLAIN) {
+            for (int k = 0; k < n; k++) {
+                if      (dom == Long.class)   vals [k] = buf.getLong ();
+                else if (dom == Double.class) vals [k] = buf.getDouble ();
+                else                          vals [k] = buf.getFloat ();
+            } // for
+            return vals;
+        } // if
+
+        int [] v = new int [n];
+        if      (tag == RLE) unRle (buf, v);
+        else if (tag == FOR) unFrameOfRef (buf, v);
+        else                 unDelta (buf, v);
+
+        for (int k = 0; k < n; k++) {
+            if      (d != null)          vals [k] = d.decode (v [k]);
+            else if (dom == Short.class) vals [k] = (short) v [k];
+            else if (dom == Byte.class)  vals [k] = (byte) v [k];
+            else                         vals [k] = v [k];
+        } // for
+        return vals;
+    } // decode
+
+    /************************************************************************************
+     * Run-length encode the values as (value, run length) pairs of varints.
+     *
+     * @param v  the values
+     * @return  the encoded chunk
+     */
+    private static byte [] rle (int [] v)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream out = new DataOutputStream (bytes);
+        out.writeByte (RLE);
+        for (int i = 0; i < v.length; ) {
+            int k = i + 1;
+            while (k < v.length && v [k] == v [i]) k++;
+            writeVar (out, zigzag (v [i]));
+            writeVar (out, k - i);
+            i = k;
+        } // for
+        out.flush ();
+        return bytes.toByteArray ();
+    } // rle
+
+    /************************************************************************************
+     * Decode a run-length encoded chunk (the tag has been consumed).
+     *
+     * @param buf  the chunk bytes
+     * @param v    the array receiving the values
+     */
+    private static void unRle (ByteBuffer buf, int [] v)
+    {
+        for (int i = 0; i < v.length; ) {
+            int x = (int) unzigzag (readVar (buf));
+            for (long run = readVar (buf); run > 0; run--) v [i++] = x;
+        } // for
+    } // unRle
+
+    /************************************************************************************
+     * Frame-of-reference encode the values: the minimum followed by the bit-packed
+     * offsets of each value from the minimum.
+     *
+     * @param v  the values
+     * @return  the encoded chunk
+     */
+    private static byte [] frameOfRef (int [] v)
+        throws IOException
+    {
+        int min = Integer.MAX_VALUE;
+        for (int x : v) min = Math.min (min, x);
+        long [] off = new long [v.length];
+        for (int k = 0; k < v.length; k++) off [k] = (long) v [k] - min;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream out = new DataOutputStream (bytes);
+        out.writeByte (FOR);
+        out.writeInt (min);
+        pack (out, off);
+        out.flush ();
+        return bytes.toByteArray ();
+    } // frameOfRef
+
+    /************************************************************************************
+     * Decode a frame-of-reference chunk (the tag has been consumed).
+     *
+     * @param buf  the chunk bytes
+     * @param v    the array receiving the values
+     */
+    private static void unFrameOfRef (ByteBuffer buf, int [] v)
+    {
+        int min = buf.getInt ();
+        long [] off = unpack (buf, v.length);
+        for (int k = 0; k < v.length; k++) v [k] = (int) (min + off [k]);
+    } // unFrameOfRef
+
+    /************************************************************************************
+     * Delta encode the values: the first value, the minimum delta, and the bit-packed
+     * offsets of each successive delta from the minimum delta.
+     *
+     * @param v  the values
+     * @return  the encoded chunk
+     */
+    private static byte [] delta (int [] v)
+        throws IOException
+    {
+        long [] dv = new long [Math.max (v.length - 1, 0)];
+        long minDelta = 0;
+        for (int k = 0; k < dv.length; k++) {
+            dv [k] = (long) v [k + 1] - v [k];
+            if (k == 0 || dv [k] < minDelta) minDelta = dv [k];
+        } // for
+        for (int k = 0; k < dv.length; k++) dv [k] -= minDelta;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream ();
+        DataOutputStream out = new DataOutputStream (bytes);
+        out.writeByte (DELTA);
+        out.writeInt (v.length == 0 ? 0 : v [0]);
+        out.writeLong (minDelta);
+        pack (out, dv);
+        out.flush ();
+        return bytes.toByteArray ();
+    } // delta
+
+    /************************************************************************************
+     * Decode a delta chunk (the tag has been consumed).
+     *
+     * @param buf  the chunk bytes
+     * @param v    the array receiving the values
+     */
+    private static void unDelta (ByteBuffer buf, int [] v)
+    {
+        int  first    = buf.getInt ();
+        long minDelta = buf.getLong ();
+        long [] dv    = unpack (buf, Math.max (v.length - 1, 0));
+        if (v.length > 0) v [0] = first;
+        for (int k = 1; k < v.length; k++) v [k] = (int) (v [k - 1] + dv [k - 1] + minDelta);
+    } // unDelta
+
+    /************************************************************************************
+     * Bit-pack non-negative values using the bit width of the largest one.
+     *
+     * @param out  the output stream
+     * @param v    the values
+     */
+    private static void pack (DataOutputStream out, long [] v)
+        throws IOException
+    {
+        long max = 0;
+        for (long x : v) max |= x;
+        int width = 64 - Long.numberOfLeadingZeros (max);
+        out.writeByte (width);
+        if (width == 0) return;
+
+        long word = 0;
+        int  used = 0;
+        for (long x : v) {
+            word |= x << used;
+            if (used + width >= 64) {
+                out.writeLong (word);
+                word = (used == 0) ? 0 : x >>> (64 - used);
+                used = used + width - 64;
+            } else {
+                used += width;
+            } // if
+        } // for
+        if (used > 0) out.writeLong (word);
+    } // pack
+
+    /************************************************************************************
+     * Unpack n bit-packed values.
+     *
+     * @param buf  the chunk bytes
+     * @param n    the number of values
+     * @return  the unpacked values
+     */
+    private static long [] unpack (ByteBuffer buf, int n)
+    {
+        long [] v = new long [n];
+        int width = buf.get ();
+        if (width == 0) return v;
+
+        long mask = (width == 64) ? -1L : (1L << width) - 1;
+        long word = 0;
+        int  left = 0;
+        for (int k = 0; k < n; k++) {
+            if (left == 0) {
+                word = buf.getLong ();
+                left = 64;
+            } // if
+            if (left >= width) {
+                v [k] = word & mask;
+                word  = (width == 64) ? 0 : word >>> width;
+                left -= width;
+            } else {
+                long lo = word;
+                word    = buf.getLong ();
+                v [k]   = (lo | word << left) & mask;
+                word    = word >>> (width - left);
+                left    = 64 - (width - left);
+            } // if
+        } // for
+        return v;
+    } // unpack
+
+    /************************************************************************************
+     * Write an unsigned variable length integer (7 bits per byte).
+     *
+     * @param out  the output stream
+     * @param x    the value
+     */
+    private static void writeVar (DataOutputStream out, long x)
+        throws IOException
+    {
+        while ((x & ~0x7FL) != 0) {
+            out.writeByte ((int) (x & 0x7F) | 0x80);
+            x >>>= 7;
+        } // while
+        out.writeByte ((int) x);
+    } // writeVar
+
+    /************************************************************************************
+     * Read an unsigned variable length integer.
+     *
+     * @param buf  the chunk bytes
+     * @return  the value
+     */
+    private static long readVar (ByteBuffer buf)
+    {
+        long x = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get ();
+            x |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return x;
+        } // for
+    } // readVar
+
+    /************************************************************************************
+     * Map a signed value to an unsigned one so small magnitudes stay small.
+     *
+     * @param x  the signed value
+     * @return  the zigzag encoded value
+     */
+    private static long zigzag (long x)
+    {
+        return (x << 1) ^ (x >> 63);
+    } // zigzag
+
+    /************************************************************************************
+     * Map a zigzag encoded value back to the signed value.
+     *
+     * @param x  the zigzag encoded value
+     * @return  the signed value
+     */
+    private static long unzigzag (long x)
+    {
+        return (x >>> 1) ^ -(x & 1);
+    } // unzigzag
+
+} // SegmentFile class
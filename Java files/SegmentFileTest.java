@@ -0,0 +1,108 @@
+/****************************************************************************************
+ * @file  SegmentFileTest.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The SegmentFileTest class checks that tables saved in compressed segment files load
+ * back with the same tuples, in full and mapped, including row groups holding nulls,
+ * and that equality selects on the loaded STRING columns find every match.
+ *
+ * #usage java -ea SegmentFileTest
+ */
+class SegmentFileTest
+{
+    /** Number of checks passed. */
+    private static int passed = 0;
+    /** Number of tuples saved (two row groups, only the second holding nulls). */
+    private static final int N = SegmentFile.GROUP + 5000;
+
+    /************************************************************************************
+     * Run the checks, failing on the first that does not hold.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Table.setTrace (false);
+        new File (Table.DIR).mkdirs ();
+        Table m = movies ();
+        m.saveCompressed ();
+        try {
+            roundTrip (m, Table.loadCompressed ("segtest"), "loaded");
+            roundTrip (m, Table.loadMapped ("segtest"), "mapped");
+        } finally {
+            new File (Table.DIR + "segtest" + Table.SEG).delete ();
+        } // try
+        out.println ("SegmentFileTest: " + passed + " checks passed");
+    } // main
+
+    /************************************************************************************
+     * Check a loaded table against the saved one: every tuple by key, and equality
+     * selects on STRING values from groups with and without nulls.
+     *
+     * @param m    the saved table
+     * @param l    the loaded table
+     * @param how  how the table was loaded
+     */
+    private static void roundTrip (Table m, Table l, String how)
+    {
+        check (l != null && l.size () == N, how + " table has its tuples");
+        for (String genre : new String [] { "drama", "comedy", "g7" }) {
+            int saved = m.select ("genre", genre).size ();
+            check (saved > 0, "saved table has " + genre);
+            check (l.select ("genre", genre).size () == saved, how + " equality select on " + genre);
+            check (l.select ("genre", "=", genre).size () == saved, how + " comparison select on " + genre);
+            check (l.select (t -> genre.equals (t [5])).size () == saved, how + " predicate select on " + genre);
+        } // for
+        check (l.select ("genre", "absent").size () == 0, how + " absent value is not found");
+
+        boolean same = true;
+        for (int i = 0; i < N; i += 7) {
+            Comparable [] t = l.select (new KeyType (i)).rows ().get (0);
+            same &= Arrays.equals (t, m.select (new KeyType (i)).rows ().get (0));
+        } // for
+        check (same, how + " tuples are unchanged");
+    } // roundTrip
+
+    /************************************************************************************
+     * Create a table of N movies whose columns compress in different ways (runs,
+     * small ranges, negative steps, reals), with nulls in every column of the second
+     * row group only.
+     *
+     * @return  the table
+     */
+    private static Table movies ()
+    {
+        Table  m = new Table ("segtest", "id year runs budget rating genre", "Integer Short Integer Long Double String", "id");
+        Random r = new Random (27);
+        for (int i = 0; i < N; i++) {
+            boolean nulls = i >= SegmentFile.GROUP && r.nextInt (50) == 0;
+            m.insert (new Comparable [] { i,
+                                          nulls ? null : (short) (1900 + i % 120),
+                                          nulls ? null : -i / 1000,
+                                          nulls ? null : (long) r.nextInt (1 << 20) << 20,
+                                          nulls ? null : r.nextDouble (),
+                                          nulls ? null : (i % 3 == 0) ? "drama" : (i % 3 == 1) ? "comedy" : "g" + i % 11 });
+        } // for
+        return m;
+    } // movies
+
+    /************************************************************************************
+     * Check that a condition holds.
+     *
+     * @param cond  the condition
+     * @param what  what is checked
+     */
+    private static void check (boolean cond, String what)
+    {
+        if (! cond) throw new AssertionError ("SegmentFileTest: " + what);
+        passed++;
+    } // check
+
+} // SegmentFileTest class
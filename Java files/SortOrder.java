@@ -0,0 +1,107 @@
+/****************************************************************************************
+ * @file  SortOrder.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.util.*;
+
+/****************************************************************************************
+ * The SortOrder class parses an ordering specification such as "year DESC title" into
+ * a tuple comparator.  Each attribute may be followed by ASC (the default) or DESC.
+ * The comparison for each attribute is specialized by its domain, so primitive values
+ * are compared directly rather than through Comparable.compareTo.  Nulls sort first
+ * for both ASC and DESC attributes.
+ */
+class SortOrder
+{
+    /** Column positions of the ordering attributes. */
+    final int [] cols;
+    /** Whether each ordering attribute is descending. */
+    final boolean [] desc;
+    /** The tuple comparator. */
+    final Comparator <Comparable []> comparator;
+
+    /************************************************************************************
+     * Parse an ordering specification against a table schema.
+     * @param spec       the ordering specification (e.g., "year DESC title")
+     * @param attribute  the attribute names of the table
+     * @param domain     the attribute domains of the table
+     */
+    SortOrder (String spec, String [] attribute, Class [] domain)
+    {
+        List <Integer> c = new ArrayList <> ();
+        List <Boolean> d = new ArrayList <> ();
+        for (String tok : spec.trim ().split ("\\s+")) {
+            if (tok.equalsIgnoreCase ("DESC") || tok.equalsIgnoreCase ("ASC")) {
+                if (c.isEmpty ()) throw new IllegalArgumentException ("SortOrder: misplaced " + tok);
+                d.set (d.size () - 1, tok.equalsIgnoreCase ("DESC"));
+            } else {
+                int j = Arrays.asList (attribute).indexOf (tok);
+                if (j < 0) throw new IllegalArgumentException ("SortOrder: attribute not found " + tok);
+                c.add (j);
+                d.add (false);
+            } // if
+        } // for
+
+        cols = new int [c.size ()];
+        desc = new boolean [c.size ()];
+        List <Comparator <Comparable []>> parts = new ArrayList <> ();
+        for (int k = 0; k < cols.length; k++) {
+            cols [k] = c.get (k);
+            desc [k] = d.get (k);
+            Comparator <Comparable []> part = column (cols [k], domain [cols [k]]);
+            parts.add (nullsFirst (cols [k], desc [k] ? part.reversed () : part));
+        } // for
+
+        @SuppressWarnings("unchecked")
+        Comparator <Comparable []> [] chain = parts.toArray (new Comparator [0]);
+        comparator = (a, b) -> {
+            for (Comparator <Comparable []> part : chain) {
+                int r = part.compare (a, b);
+                if (r != 0) return r;
+            } // for
+            return 0;
+        };
+    } // constructor
+
+    /************************************************************************************
+     * Return a comparator on the non-null values of column j specialized for its domain.
+     *
+     * @param j    the column position
+     * @param dom  the column domain
+     * @return  a comparator of tuples on column j
+     */
+    @SuppressWarnings("unchecked")
+    private static Comparator <Comparable []> column (int j, Class dom)
+    {
+        Comparator <Comparable []> cmp;
+        if      (dom == Integer.class)   cmp = (a, b) -> Integer.compare ((Integer) a [j], (Integer) b [j]);
+        else if (dom == Long.class)      cmp = (a, b) -> Long.compare ((Long) a [j], (Long) b [j]);
+        else if (dom == Double.class)    cmp = (a, b) -> Double.compare ((Double) a [j], (Double) b [j]);
+        else if (dom == Float.class)     cmp = (a, b) -> Float.compare ((Float) a [j], (Float) b [j]);
+        else if (dom == Short.class)     cmp = (a, b) -> Short.compare ((Short) a [j], (Short) b [j]);
+        else if (dom == Byte.class)      cmp = (a, b) -> Byte.compare ((Byte) a [j], (Byte) b [j]);
+        else if (dom == Character.class) cmp = (a, b) -> Character.compare ((Character) a [j], (Character) b [j]);
+        else if (dom == String.class)    cmp = (a, b) -> ((String) a [j]).compareTo ((String) b [j]);
+        else                             cmp = (a, b) -> a [j].compareTo (b [j]);
+        return cmp;
+    } // column
+
+    /************************************************************************************
+     * Extend a comparator on column j to nulls, which sort before all values.  This is
+     * applied after any reversal, so nulls stay first for DESC as well.
+     *
+     * @param j    the column position
+     * @param cmp  the comparator on the non-null values of column j
+     * @return  a comparator of tuples on column j
+     */
+    private static Comparator <Comparable []> nullsFirst (int j, Comparator <Comparable []> cmp)
+    {
+        return (a, b) -> {
+            if (a [j] == null || b [j] == null) return (a [j] == null ? 0 : 1) - (b [j] == null ? 0 : 1);
+            return cmp.compare (a, b);
+        };
+    } // nullsFirst
+
+} // SortOrder class
@@ -0,0 +1,165 @@
+/****************************************************************************************
+ * @file  SpillFile.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+
+/****************************************************************************************
+ * The SpillFile class provides a temporary file of tuples in the storage directory, used
+ * by operators whose working set exceeds the memory budget.  Tuples are appended, then
+ * read back (possibly several times) in the order written.  A reader closes its stream
+ * once drained, or when closed early; close closes any open readers and deletes the
+ * file, so callers must close every spill file (e.g., in a finally block).
+ */
+class SpillFile
+       implements Iterable <Comparable []>, Closeable
+{
+    /** Number of writes between stream resets (bounds the serialization handle table). */
+    private static final int RESET = 1024;
+    /** The temporary file. */
+    private final File file;
+    /** Output stream (null once writing has finished). */
+    private ObjectOutputStream oos;
+    /** The readers not yet closed. */
+    private final List <Reader> readers = new ArrayList <> ();
+    /** Number of tuples written. */
+    private int size = 0;
+
+    /************************************************************************************
+     * Create an empty spill file in the storage directory.
+     */
+    SpillFile ()
+        throws IOException
+    {
+        File dir = new File (Table.DIR);
+        dir.mkdirs ();
+        file = File.createTempFile ("spill", ".tmp", dir);
+        try {
+            oos = new ObjectOutputStream (new BufferedOutputStream (new FileOutputStream (file)));
+        } catch (IOException ex) {
+            file.delete ();
+            throw ex;
+        } // try
+    } // constructor
+
+    /************************************************************************************
+     * The Reader class iterates over the tuples of a spill file in the order written,
+     * holding an open stream until it is drained or closed.
+     */
+    class Reader
+          implements Iterator <Comparable []>, Closeable
+    {
+        /** The input stream (null once closed). */
+        private ObjectInputStream ois;
+        /** Number of tuples read. */
+        private int read = 0;
+
+        /********************************************************************************
+         * Open a reader at the first tuple.
+         */
+        private Reader ()
+            throws IOException
+        {
+            ois = new ObjectInputStream (new BufferedInputStream (new FileInputStream (file)));
+        } // constructor
+
+        /********************************************************************************
+         * Return whether there are more tuples, closing the stream after the last.
+         * @return  whether next has a tuple to return
+         */
+        public boolean hasNext ()
+        {
+            if (read < size && ois != null) return true;
+            try { close (); } catch (IOException ex) { throw new UncheckedIOException (ex); }
+            return false;
+        } // hasNext
+
+        /********************************************************************************
+         * Read the next tuple.
+         * @return  the next tuple
+         */
+        public Comparable [] next ()
+        {
+            if (read >= size || ois == null) throw new NoSuchElementException ();
+            try {
+                read++;
+                return (Comparable []) ois.readObject ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException (ex);
+            } catch (ClassNotFoundException ex) {
+                throw new IllegalStateException (ex);
+            } // try
+        } // next
+
+        /********************************************************************************
+         * Close the stream (if still open).
+         */
+        public void close ()
+            throws IOException
+        {
+            if (ois == null) return;
+            ois.close ();
+            ois = null;
+            readers.remove (this);
+        } // close
+    } // Reader class
+
+    /************************************************************************************
+     * Append a tuple to the spill file.
+     *
+     * @param t  the tuple to append
+     */
+    void add (Comparable [] t)
+        throws IOException
+    {
+        oos.writeObject (t);
+        if (++size % RESET == 0) oos.reset ();
+    } // add
+
+    /************************************************************************************
+     * Return the number of tuples written.
+     *
+     * @return  the size of the spill file
+     */
+    int size ()
+    {
+        return size;
+    } // size
+
+    /************************************************************************************
+     * Open a reader over the tuples in the order written.  Writing is finished on first
+     * use.  A reader not drained should be closed (e.g., by try-with-resources).
+     *
+     * @return  a reader over the spilled tuples
+     */
+    public Reader iterator ()
+    {
+        try {
+            if (oos != null) {
+                oos.close ();
+                oos = null;
+            } // if
+            Reader r = new Reader ();
+            readers.add (r);
+            return r;
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // iterator
+
+    /************************************************************************************
+     * Close the spill file and its open readers and delete the file.
+     */
+    public void close ()
+        throws IOException
+    {
+        if (oos != null) oos.close ();
+        oos = null;
+        for (Reader r : new ArrayList <> (readers)) r.close ();
+        file.delete ();
+    } // close
+
+} // SpillFile class
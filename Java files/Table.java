@@ -6,6 +6,7 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -17,18 +18,32 @@ import static java.lang.System.out;
  * -  Attribute names, Domains, A list of tuples
  * ---FIVE basic relational algebra operators provided:
  * -  Project, Select, Union, Minus, and Join
- * ---INSERT data manipulation operator is also provided
- * -  Does not include update and delete data manipulation operators
+ * ---INSERT, UPDATE and DELETE data manipulation operators are also provided
+ * -  Deletes leave tombstones that are compacted away by the next scan
+ * ---Tuples may be stored off-heap (see OffHeapStore); such tables are append-only
+ * ---Tables may be loaded lazily from a mapped segment file (see loadMapped)
+ * ---Comparison selects skip blocks of tuples using a zone map (see ZoneMap)
  */
 public class Table
        implements Serializable
 {
+    /** Version of the serialized form (pinned to that of the first release, whose files
+     *  lack the fields added since; see readResolve). */
+    private static final long serialVersionUID = 195556944384432319L;
     /** Relative path for storage directory. */
-    private static final String DIR = "store" + File.separator;
+    static final String DIR = "store" + File.separator;
     /** Filename extension for database files. */
     private static final String EXT = ".dbf";
-    /** Counter for naming temporary tables. */
-    private static int count = 0;
+    /** Filename extension for compressed segment files. */
+    static final String SEG = ".dbc";
+    /** Counter for naming temporary tables (incremented by parallel operators too). */
+    private static final AtomicInteger count = new AtomicInteger ();
+    /** Memory budget (in tuples) for operators that spill to disk when exceeded. */
+    private static int budget = 1 << 20;
+    /** Cache of operator results (null when caching is off). */
+    private static QueryCache cache = null;
+    /** Whether DDL, DML and RA operations are echoed to standard output. */
+    private static boolean trace = true;
     /** Table name. */
     private final String name;
     /** Array of attribute names. */
@@ -38,12 +53,26 @@ public class Table
      *  REAL types: Double, Float
      *  STRING types: Character, String */
     private final Class [] domain;
-    /** Collection of tuples (data storage). */
-    private final List <Comparable []> tuples;
+    /** Collection of tuples (data storage; replaced when a mapped table is materialized). */
+    private List <Comparable []> tuples;
     /** Primary key(s). */
     private final String [] key;
-    /** Index into tuples (maps key to tuple number). */
-    private final Map <KeyType, Comparable []> index;
+    /** Index into tuples (maps key to tuple number; replaced when a mapped table is materialized). */
+    private Map <KeyType, Comparable []> index;
+    /** Dictionaries for the STRING domain columns (null for other domains). */
+    private final ColumnDictionary [] dict;
+    /** Tombstones: deleted tuples still in the tuples list (compared by identity). */
+    private final Set <Comparable []> deleted = Collections.newSetFromMap (new IdentityHashMap <> ());
+    /** Modification version (bumped by every successful insert, update or delete). */
+    private long version = 0;
+    /** Block summaries of the tuples (null until needed or after a change other than an insert). */
+    private ZoneMap zones;
+    /** Materialized views maintained from this table (not saved with the table). */
+    private transient List <MaterializedView> views;
+    /** Whether the table is a cached operator result, shared by every caller, and so read-only. */
+    private transient boolean shared = false;
+    /** Whether the table is an operator result derived from other tables, and so read-only. */
+    private transient boolean derived = false;
 
     //----------------------------------------------------------------------------------
     // Constructors
@@ -57,15 +86,36 @@ public class Table
      * @param _key        the primary key
      */  
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key)
+    {
+        this (_name, _attribute, _domain, _key, false);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the meta-data specifications, storing its tuples
+     * either on the heap or off-heap in direct buffer arenas (see OffHeapStore).
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param offHeap     whether to store the tuples off-heap
+     */
+    public Table (String _name, String [] _attribute, Class [] _domain, String [] _key, boolean offHeap)
     {
         name      = _name;
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = new TreeMap <> ();       // also try BPTreeMap, LinHashMap or ExtHashMap
-        // index     = new LinHashMap <> (KeyType.class, Comparable [].class);
-
+        dict      = makeDicts (_domain);
+        if (offHeap) {
+            OffHeapStore store = new OffHeapStore (_domain, dict);
+            tuples = store;
+            index  = new OffHeapStore.KeyIndex (store, match (_key));
+        } else {
+            tuples = new ArrayList <> ();
+            index  = new TreeMap <> ();       // also try BPTreeMap, LinHashMap or ExtHashMap
+            // index     = new LinHashMap <> (KeyType.class, Comparable [].class);
+        } // if
+        zones = new ZoneMap (_domain);
     } // constructor
 
     /************************************************************************************
@@ -78,6 +128,23 @@ public class Table
      */  
     public Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
                   List <Comparable []> _tuples)
+    {
+        this (_name, _attribute, _domain, _key, _tuples, makeDicts (_domain));
+        for (Comparable [] tup : tuples) encode (tup);
+    } // constructor
+
+    /************************************************************************************
+     * Construct a table from tuples whose STRING values are already canonical in the
+     * given dictionaries (e.g., tuples taken from another table sharing them).
+     * @param _name       the name of the relation
+     * @param _attribute  the string containing attributes names
+     * @param _domain     the string containing attribute domains (data types)
+     * @param _key        the primary key
+     * @param _tuple      the list of tuples containing the data
+     * @param _dict       the column dictionaries the tuples are encoded with
+     */
+    private Table (String _name, String [] _attribute, Class [] _domain, String [] _key,
+                   List <Comparable []> _tuples, ColumnDictionary [] _dict)
     {
         name      = _name;
         attribute = _attribute;
@@ -85,6 +152,7 @@ public class Table
         key       = _key;
         tuples    = _tuples;
         index     = new TreeMap <> ();       // also try BPTreeMap, LinHashMap or ExtHashMap
+        dict      = _dict;
     } // constructor
 
     /************************************************************************************
@@ -95,9 +163,26 @@ public class Table
      */
     public Table (String name, String attributes, String domains, String _key)
     {
-        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "));
+        this (name, attributes, domains, _key, false);
+    } // constructor
+
+    /************************************************************************************
+     * Construct an empty table from the raw string specifications, storing its tuples
+     * either on the heap or off-heap.
+     *
+     * #usage new Table ("movie", "title year length genre studioName producerNo",
+     *                   "String Integer Integer String String Integer", "title year", true)
+     *
+     * @param name        the name of the relation
+     * @param attributes  the string containing attributes names
+     * @param domains     the string containing attribute domains (data types)
+     * @param offHeap     whether to store the tuples off-heap
+     */
+    public Table (String name, String attributes, String domains, String _key, boolean offHeap)
+    {
+        this (name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "), offHeap);
 
-        out.println ("DDL> create table " + name + " (" + attributes + ")");
+        trace ("DDL> create " + (offHeap ? "off-heap " : "") + "table " + name + " (" + attributes + ")");
     } // constructor
 
     //----------------------------------------------------------------------------------
@@ -106,7 +191,8 @@ public class Table
 
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
-     * Check whether the original key is included in the projection.
+     * Check whether the original key is included in the projection.  Duplicate tuples
+     * are eliminated (set semantics).
      *
      * #usage movie.project ("title year studioNo")
      *
@@ -116,22 +202,243 @@ public class Table
      */
     public Table project (String attributes)
     {
-        out.println ("RA> " + name + ".project (" + attributes + ")");
+        return project (attributes, false);
+    } // project
+
+    /************************************************************************************
+     * Project the tuples onto a lower dimension by keeping only the given attributes.
+     * With set semantics, duplicates are eliminated by hashing (see HashDistinct), which
+     * spills partitions to the storage directory once the distinct tuples exceed the
+     * memory budget.  No elimination is needed when the original key is included.
+     *
+     * #usage movie.project ("genre", true)
+     *
+     * @param attributes  the attributes to project onto
+     * @param bag         whether to keep duplicates (bag semantics)
+     * @return  a table of projected tuples
+     */
+    public Table project (String attributes, boolean bag)
+    {
+        trace ("RA> " + name + ".project (" + attributes + ")");
+        QueryCache.Key ck  = cacheKey (null, "project", attributes, bag);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
         String [] attrs     = attributes.split (" ");
         Class []  colDomain = extractDom (match (attrs), domain);
-        String [] newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
+        boolean   keyKept   = Arrays.asList (attrs).containsAll (Arrays.asList (key));
+        String [] newKey    = keyKept ? key : attrs;
 
         List <Comparable []> rows = new ArrayList <> ();
 
         //  K A T I E ' S  W O R K
-        for (Comparable [] row : this.tuples){
-            rows.add(this.extract(row, attrs));
+        if (bag || keyKept) {
+            for (Comparable [] row : this.live ()){
+                rows.add(this.extract(row, attrs));
+            }
+        } else {
+            int [] cols = match (attrs);
+            HashDistinct.distinct (live ().stream ().map (t -> extract (t, cols)).iterator (), budget, rows::add);
         }
         //  K A T I E ' S  W O R K
 
-        return new Table (name + count++, attrs, colDomain, newKey, rows);
+        Table result = new Table (name + count.getAndIncrement (), attrs, colDomain, newKey, rows, extractDict (match (attrs)));
+        if (! (bag || keyKept)) for (Comparable [] t : rows) result.encode (t);   // spilled copies
+        return remember (ck, result);
     } // project
 
+    /************************************************************************************
+     * Order the tuples by the given attributes, each optionally followed by ASC or DESC.
+     * The sort is stable.  Tuples held on the heap are sorted in memory, since spilling
+     * them would only add copies of tuples that stay in memory.  Tuples that are
+     * decoded as they are read (mapped or off-heap tables) are sorted by ExternalSort,
+     * which spills sorted runs to the storage directory when the table exceeds the
+     * memory budget; its merged output is collected into the result table, which, like
+     * every table, holds its tuples in memory.
+     *
+     * #usage movie.orderBy ("year DESC title")
+     *
+     * @param attributes  the ordering specification
+     * @return  a table with the tuples in the given order
+     */
+    public Table orderBy (String attributes)
+    {
+        trace ("RA> " + name + ".orderBy (" + attributes + ")");
+        QueryCache.Key ck  = cacheKey (null, "orderBy", attributes);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        SortOrder            order   = new SortOrder (attributes, attribute, domain);
+        List <Comparable []> rows;
+        boolean              spilled = false;
+        if (tuples instanceof OffHeapStore || tuples instanceof MappedTuples) {
+            rows = new ArrayList <> (size ());
+            try (ExternalSort.Sorted sorted = ExternalSort.sort (live ().iterator (), order.comparator, budget)) {
+                sorted.forEachRemaining (rows::add);
+                spilled = sorted.spilled ();
+            } // try
+        } else {
+            rows = new ArrayList <> (live ());
+            rows.sort (order.comparator);
+        } // if
+
+        Table result = new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict);
+        if (spilled) for (Comparable [] t : rows) result.encode (t);    // spilled copies
+        return remember (ck, result);
+    } // orderBy
+
+    /************************************************************************************
+     * Return the n tuples that come first in the given order, in that order.  The
+     * tuples are scanned once through a bounded heap holding the n best seen so far,
+     * so nothing else is sorted or materialized.  When the order is the primary key
+     * (all ascending or all descending) the sorted index is read and only n tuples
+     * are touched.
+     *
+     * #usage movie.topK (10, "length DESC")
+     *
+     * @param n           the number of tuples to return
+     * @param attributes  the ordering specification (see orderBy)
+     * @return  a table with the first n tuples in the given order
+     */
+    public Table topK (int n, String attributes)
+    {
+        trace ("RA> " + name + ".topK (" + n + ", " + attributes + ")");
+        QueryCache.Key ck  = cacheKey (null, "topK", n, attributes);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        SortOrder            order = new SortOrder (attributes, attribute, domain);
+        List <Comparable []> rows  = new ArrayList <> (Math.max (0, Math.min (n, size ())));
+
+        NavigableMap <KeyType, Comparable []> sorted = keyOrder (order);
+        if (sorted != null) {
+            for (Comparable [] t : sorted.values ()) {
+                if (rows.size () >= n) break;
+                rows.add (t);
+            } // for
+        } else if (n > 0) {
+            PriorityQueue <Comparable []> best = new PriorityQueue <> (n + 1, order.comparator.reversed ());
+            for (Comparable [] t : live ()) {
+                if (best.size () < n) {
+                    best.add (t);
+                } else if (order.comparator.compare (t, best.peek ()) < 0) {
+                    best.poll ();
+                    best.add (t);
+                } // if
+            } // for
+            rows.addAll (best);
+            rows.sort (order.comparator);
+        } // if
+
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict));
+    } // topK
+
+    /************************************************************************************
+     * Return the first n tuples.
+     *
+     * #usage movie.limit (10)
+     *
+     * @param n  the maximum number of tuples to return
+     * @return  a table with the first n tuples
+     */
+    public Table limit (int n)
+    {
+        return limit (n, 0);
+    } // limit
+
+    /************************************************************************************
+     * Return the n tuples following the first m (a page of the table).  Only those
+     * tuples are copied, whatever the size of the table.
+     *
+     * #usage movie.limit (10, 20)
+     *
+     * @param n  the maximum number of tuples to return
+     * @param m  the number of tuples to skip
+     * @return  a table with tuples m to m + n - 1
+     */
+    public Table limit (int n, int m)
+    {
+        trace ("RA> " + name + ".limit (" + n + ", " + m + ")");
+        QueryCache.Key ck  = cacheKey (null, "limit", n, m);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        List <Comparable []> all  = live ();
+        int                  from = Math.min (Math.max (m, 0), all.size ());
+        int                  to   = (int) Math.min ((long) from + Math.max (n, 0), all.size ());
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key,
+                                        new ArrayList <> (all.subList (from, to)), dict));
+    } // limit
+
+    /************************************************************************************
+     * Return all but the first m tuples.
+     *
+     * #usage movie.offset (20)
+     *
+     * @param m  the number of tuples to skip
+     * @return  a table without the first m tuples
+     */
+    public Table offset (int m)
+    {
+        return limit (Integer.MAX_VALUE, m);
+    } // offset
+
+    /************************************************************************************
+     * Group the tuples on the given attributes and compute the aggregates for each
+     * group.  The result has the grouping attributes (its key) followed by one attribute
+     * per aggregate, named e.g. "count" or "avg_length".  Aggregation is done by
+     * HashAggregator, in parallel for large tables, spilling to the storage directory
+     * when the number of groups exceeds the memory budget.  Nulls are skipped by every
+     * aggregate but count (), and an aggregate over only nulls is null.  SUM and AVG
+     * need an INTEGER or REAL attribute.
+     *
+     * #usage movie.groupBy ("studioName", Aggregate.count (), Aggregate.avg ("length"))
+     *
+     * @param attributes  the grouping attributes
+     * @param aggs        the aggregates to compute
+     * @return  a table with one tuple per group, or null if an aggregate is invalid
+     */
+    public Table groupBy (String attributes, Aggregate ... aggs)
+    {
+        trace ("RA> " + name + ".groupBy (" + attributes + ", " + Arrays.toString (aggs) + ")");
+        QueryCache.Key ck  = cacheKey (null, "groupBy", attributes, Arrays.asList (aggs));
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        String [] attrs     = attributes.split (" ");
+        int []    groupCols = match (attrs);
+        int []    aggCols   = new int [aggs.length];
+        Class []  aggDoms   = new Class [aggs.length];
+        String [] aggNames  = new String [aggs.length];
+        Class []  resDoms   = new Class [aggs.length];
+
+        for (int a = 0; a < aggs.length; a++) {
+            aggCols [a] = (aggs [a].attr == null) ? -1 : col (aggs [a].attr);
+            if (aggs [a].attr != null && aggCols [a] < 0) {
+                out.println ("groupBy ERROR: attribute not found " + aggs [a].attr);
+                return null;
+            } // if
+            aggDoms [a]  = (aggCols [a] < 0) ? null : domain [aggCols [a]];
+            Aggregate.Kind k = aggs [a].kind;
+            if ((k == Aggregate.Kind.SUM || k == Aggregate.Kind.AVG)
+                && ! HashAggregator.integral (aggDoms [a]) && ! HashAggregator.real (aggDoms [a])) {
+                out.println ("groupBy ERROR: " + aggs [a] + " needs an INTEGER or REAL attribute, not "
+                             + aggDoms [a].getSimpleName ());
+                return null;
+            } // if
+            aggNames [a] = aggs [a].name ();
+            resDoms [a]  = aggs [a].resultDomain (aggDoms [a]);
+        } // for
+
+        List <Comparable []> rows = HashAggregator.aggregate (live (), groupCols, aggs, aggCols, aggDoms, budget);
+
+        Table result = new Table (name + count.getAndIncrement (), ArrayUtil.concat (attrs, aggNames),
+                                  ArrayUtil.concat (extractDom (groupCols, domain), resDoms), attrs, rows,
+                                  ArrayUtil.concat (extractDict (groupCols), makeDicts (resDoms)));
+        for (Comparable [] t : rows) result.encode (t);                  // spilled copies
+        result.buildIndex ();
+        return remember (ck, result);
+    } // groupBy
+
     /************************************************************************************
      * Select the tuples satisfying the given predicate (Boolean function).
      *
@@ -142,11 +449,105 @@ public class Table
      */
     public Table select (Predicate <Comparable []> predicate)
     {
-        out.println ("RA> " + name + ".select (" + predicate + ")");
+        trace ("RA> " + name + ".select (" + predicate + ")");
+        QueryCache.Key ck  = cacheKey (null, "select", predicate);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key,
+                   live ().stream ().filter (t -> predicate.test (t))
+                                   .collect (Collectors.toList ()), dict));
+    } // select
+
+    /************************************************************************************
+     * Select at most limit tuples satisfying the given predicate.  The scan stops as
+     * soon as limit tuples have been found.
+     *
+     * #usage movie.select (t -> (Integer) t[movie.col("year")] < 1980, 10)
+     *
+     * @param predicate  the check condition for tuples
+     * @param limit      the maximum number of tuples to return
+     * @return  a table with the first limit tuples satisfying the predicate
+     */
+    public Table select (Predicate <Comparable []> predicate, int limit)
+    {
+        trace ("RA> " + name + ".select (" + predicate + ", " + limit + ")");
+        QueryCache.Key ck  = cacheKey (null, "select", predicate, limit);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key,
+                   live ().stream ().filter (t -> predicate.test (t)).limit (Math.max (limit, 0))
+                                   .collect (Collectors.toList ()), dict));
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute equals the given value.
+     * For a dictionary encoded attribute the value is resolved to its code once, so a
+     * value missing from the dictionary matches nothing without a scan, and otherwise
+     * the scan compares canonical instances by reference rather than calling equals.
+     * Blocks whose zone map excludes the value are skipped.
+     *
+     * #usage movie.select ("genre", "sciFi")
+     *
+     * @param attr   the attribute to compare
+     * @param value  the value the attribute must equal
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table select (String attr, Comparable value)
+    {
+        trace ("RA> " + name + ".select (" + attr + " = " + value + ")");
+        QueryCache.Key ck  = cacheKey (null, "select", attr, value);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
 
-        return new Table (name + count++, attribute, domain, key,
-                   tuples.stream ().filter (t -> predicate.test (t))
-                                   .collect (Collectors.toList ()));
+        int c = col (attr);
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (tuples instanceof OffHeapStore) {                            // compare fields in place
+            OffHeapStore store = (OffHeapStore) tuples;
+            if (value != null) for (int i : store.find (c, value)) rows.add (store.get (i));
+        } else if (dict [c] != null) {
+            int code = dict [c].code (value);
+            if (code >= 0) {
+                Comparable canon = dict [c].decode (code);
+                rows = scan (c, "=", canon, t -> t [c] == canon);
+            } // if
+        } else {
+            rows = scan (c, "=", value, t -> value.equals (t [c]));
+        } // if
+
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict));
+    } // select
+
+    /************************************************************************************
+     * Select the tuples whose value for the given attribute compares with the given
+     * value as op says.  Blocks of tuples whose zone map (min/max, null count and,
+     * for STRING attributes, Bloom filter) shows they cannot match are skipped, so a
+     * selective comparison on roughly ordered data reads only a few blocks.  Null
+     * values satisfy no comparison.
+     *
+     * #usage movie.select ("year", "<", 1980)
+     *
+     * @param attr   the attribute to compare
+     * @param op     the comparison operator (= != < <= > >=)
+     * @param value  the value to compare with (of the attribute's domain)
+     * @return  a table with tuples satisfying the comparison
+     */
+    @SuppressWarnings("unchecked")
+    public Table select (String attr, String op, Comparable value)
+    {
+        trace ("RA> " + name + ".select (" + attr + " " + op + " " + value + ")");
+        IntPredicate   test = ZoneMap.comparison (op);
+        QueryCache.Key ck   = cacheKey (null, "select", attr, op, value);
+        Table          hit  = cached (ck);
+        if (hit != null) return hit;
+
+        int c = col (attr);
+        List <Comparable []> rows = (value == null) ? new ArrayList <> ()
+                                  : scan (c, op, value, t -> t [c] != null && test.test (t [c].compareTo (value)));
+
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict));
     } // select
 
     /************************************************************************************
@@ -159,13 +560,16 @@ public class Table
      */
     public Table select (KeyType keyVal)
     {
-        out.println ("RA> " + name + ".select (" + keyVal + ")");
+        trace ("RA> " + name + ".select (" + keyVal + ")");
+        QueryCache.Key ck  = cacheKey (null, "select", keyVal);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
 
         List <Comparable []> rows = new ArrayList <> ();
 
 
 
-        out.println("ARRAY LIST:\n" + rows);
+        trace("ARRAY LIST:\n" + rows);
 
         //  K A T I E ' S  W O R K
         if(index.containsKey(keyVal)){
@@ -180,7 +584,7 @@ public class Table
         */
         //  K A T I E ' S  W O R K
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict));
     } // select
 
     /************************************************************************************
@@ -194,20 +598,23 @@ public class Table
      */
     public Table union (Table table2)
     {
-        out.println ("RA> " + name + ".union (" + table2.name + ")");
+        trace ("RA> " + name + ".union (" + table2.name + ")");
         if (! compatible (table2)) return null;
+        QueryCache.Key ck  = cacheKey (table2, "union");
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
         
         List <Comparable []> rows = new ArrayList <> ();
 
         // adds the elements of the first table to rows
-        for (Comparable [] prime : this.tuples){
+        for (Comparable [] prime : this.live ()){
             rows.add(this.extract(prime, attribute));
         }
         
         int here = 0; // counter variable used for comparisons between the two tables
         // compares the elements within the lhs table with the table on the rhs
-        for (Comparable [] prime : table2.tuples){ 
-        	for (Comparable [] temps : this.tuples){
+        for (Comparable [] prime : table2.live ()){ 
+        	for (Comparable [] temps : this.live ()){
         		int [] cols   = match(key);
 	        	if ((prime[cols[0]].equals(temps[cols[0]]))) { // compares the titles of the movies, part 1/2 of the primary key
 	        		if ((prime[cols[1]].equals(temps[cols[1]]))) { // compares the year of the movies, part 2/2 of the primary key
@@ -221,7 +628,7 @@ public class Table
         	here = 0; // counter is reset for the next comparison loop
         }
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows));
     } // union
 
     /************************************************************************************
@@ -236,15 +643,18 @@ public class Table
      */
     public Table minus (Table table2)
     {
-        out.println ("RA> " + name + ".minus (" + table2.name + ")");
+        trace ("RA> " + name + ".minus (" + table2.name + ")");
         if (! compatible (table2)) return null;
+        QueryCache.Key ck  = cacheKey (table2, "minus");
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
 
         List <Comparable []> rows = new ArrayList <> ();
 
         int here = 0; // counter variable used for comparisons between the two tables
         // compares the elements within the lhs table with the table on the rhs
-        for (Comparable [] prime : this.tuples){ 
-        	for (Comparable [] temps : table2.tuples){
+        for (Comparable [] prime : this.live ()){ 
+        	for (Comparable [] temps : table2.live ()){
         		int [] cols   = match(key);
 	        	if ((prime[cols[0]].equals(temps[cols[0]]))) { // compares the titles of the movies, part 1/2 of the primary key
 	        		if ((prime[cols[1]].equals(temps[cols[1]]))) { // compares the year of the movies, part 2/2 of the primary key
@@ -258,7 +668,7 @@ public class Table
         	here = 0; // counter is reset for the next comparison loop
         }
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        return remember (ck, new Table (name + count.getAndIncrement (), attribute, domain, key, rows));
     } // minus
 
     /************************************************************************************
@@ -276,9 +686,50 @@ public class Table
      */
     public Table join (String attributes1, String attributes2, Table table2)
     {
-        out.println ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
+        trace ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
                                                + table2.name + ")");
+        QueryCache.Key ck  = cacheKey (table2, "join", attributes1, attributes2);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        return remember (ck, equiJoin (attributes1, attributes2, table2, Integer.MAX_VALUE));
+    } // join
+
+    /************************************************************************************
+     * Equi-join this table and table2 (see join), producing at most limit tuples.  The
+     * scans stop pulling tuples as soon as limit joined tuples have been produced.
+     *
+     * #usage movie.join ("studioName", "name", studio, 10)
+     *
+     * @param attribute1  the attributes of this table to be compared (Foreign Key)
+     * @param attribute2  the attributes of table2 to be compared (Primary Key)
+     * @param table2      the rhs table in the join operation
+     * @param limit       the maximum number of tuples to return
+     * @return  a table with the first limit tuples satisfying the equality predicate
+     */
+    public Table join (String attributes1, String attributes2, Table table2, int limit)
+    {
+        trace ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
+                                         + table2.name + ", " + limit + ")");
+        QueryCache.Key ck  = cacheKey (table2, "join", attributes1, attributes2, limit);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
 
+        return remember (ck, equiJoin (attributes1, attributes2, table2, Math.max (limit, 0)));
+    } // join
+
+    /************************************************************************************
+     * Compute the equi-join of this table and table2 (see join), stopping once limit
+     * tuples have been produced.
+     *
+     * @param attribute1  the attributes of this table to be compared
+     * @param attribute2  the attributes of table2 to be compared
+     * @param table2      the rhs table in the join operation
+     * @param limit       the maximum number of tuples to produce
+     * @return  a table with the joined tuples
+     */
+    private Table equiJoin (String attributes1, String attributes2, Table table2, int limit)
+    {
         String [] t_attrs = attributes1.split (" ");
         String [] u_attrs = attributes2.split (" ");
 
@@ -297,10 +748,18 @@ public class Table
         //if domains are different, nothing happens
         if (Arrays.equals(table1Domains, table2Domains)) {
 
+            //a single dictionary encoded column on both sides is joined on its codes
+            if (att1ColPos.length == 1 && this.dict[att1ColPos[0]] != null
+                                       && table2.dict[att2ColPos[0]] != null) {
+                joinOnCodes(att1ColPos[0], att2ColPos[0], table2, rows, limit);
+            } else
+
             //for loops do Cartesian product of tuples of this table and table 2
             //by matching tuple values of specified attributes and puts new tuples in rows
-            for (Comparable[] t1 : this.tuples) {
-                for (Comparable[] t2 : table2.tuples) {
+            scan:
+            for (Comparable[] t1 : this.live ()) {
+                for (Comparable[] t2 : table2.live ()) {
+                    if (rows.size () >= limit) break scan;
                     int matches = 0;
 
                     for (int i = 0; i < att1ColPos.length; i++) {
@@ -328,9 +787,10 @@ public class Table
             }
         }
 
-        return new Table (name + count++, ArrayUtil.concat (attribute, table2.attribute),
-                                          ArrayUtil.concat (domain, table2.domain), key, rows);
-    } // join
+        return new Table (name + count.getAndIncrement (), ArrayUtil.concat (attribute, table2.attribute),
+                          ArrayUtil.concat (domain, table2.domain), key, rows,
+                          ArrayUtil.concat (dict, table2.dict));
+    } // equiJoin
 
     /************************************************************************************
      * Join this table and table2 by performing an "natural join".  Tuples from both tables
@@ -345,7 +805,10 @@ public class Table
      */
     public Table join (Table table2)
     {
-        out.println ("RA> " + name + ".join (" + table2.name + ")");
+        trace ("RA> " + name + ".join (" + table2.name + ")");
+        QueryCache.Key ck  = cacheKey (table2, "join");
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
 
         List <Comparable []> rows = new ArrayList <> ();
 
@@ -400,8 +863,8 @@ public class Table
         // compares tuples of the tables based on their matching attributes
         // and fills "rows" array with 'joined' tuples
         if (nullCount != attrPosTable1.length) {
-            for (Comparable[] tup1 : this.tuples) {
-                for (Comparable[] tup2 : table2.tuples) {
+            for (Comparable[] tup1 : this.live ()) {
+                for (Comparable[] tup2 : table2.live ()) {
                     int countForMatchJoin = 0; // holds number of matching tuples
 
                     for (int i = 0; i < attrPosTable1.length; i++) {
@@ -421,6 +884,7 @@ public class Table
 
             List<String> newTableAttributesList = new ArrayList<>();
             List<Class> newTableDomainsList = new ArrayList<>();
+            List<ColumnDictionary> newTableDictsList = new ArrayList<>();
 
             boolean contains = true;
             for (int i = 0; i < table2.attribute.length; i++) {
@@ -433,12 +897,14 @@ public class Table
                 if (contains == true) {
                     newTableAttributesList.add(table2.attribute[i]);
                     newTableDomainsList.add(table2.domain[i]);
+                    newTableDictsList.add(table2.dict[i]);
                 }
                 contains = true;
             }
 
             String[] newTableAttributes = newTableAttributesList.toArray(new String[newTableAttributesList.size()]);
             Class[] newTableDomains = newTableDomainsList.toArray(new Class[newTableDomainsList.size()]);
+            ColumnDictionary[] newTableDicts = newTableDictsList.toArray(new ColumnDictionary[newTableDictsList.size()]);
 
             // "rows" is fixed to make sure it fits with resized values of attributes and
             // domains of table 2
@@ -476,16 +942,63 @@ public class Table
                 rows.add(t, newTup);
             }
 
-            return new Table(name + counter++, ArrayUtil.concat(attribute, newTableAttributes),
-                    ArrayUtil.concat(domain, newTableDomains), key, rows);
+            return remember(ck, new Table(name + counter++, ArrayUtil.concat(attribute, newTableAttributes),
+                    ArrayUtil.concat(domain, newTableDomains), key, rows,
+                    ArrayUtil.concat(dict, newTableDicts)));
         }
         // if is empty
         else {
-            return new Table(name + counter++, ArrayUtil.concat(attribute, table2.attribute),
-                    ArrayUtil.concat(domain, table2.domain), key, rows);
+            return remember(ck, new Table(name + counter++, ArrayUtil.concat(attribute, table2.attribute),
+                    ArrayUtil.concat(domain, table2.domain), key, rows,
+                    ArrayUtil.concat(dict, table2.dict)));
         }
     } // join
 
+    /************************************************************************************
+     * Semi-join this table and table2: keep the tuples of this table that have at least
+     * one match in table2, requiring attributes1 to equal attributes2.  Unlike join, the
+     * result has the schema of this table and each tuple appears at most once.
+     *
+     * #usage movie.semiJoin ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the semi-join operation
+     * @return  a table with the tuples of this table having a match
+     */
+    public Table semiJoin (String attributes1, String attributes2, Table table2)
+    {
+        trace ("RA> " + name + ".semiJoin (" + attributes1 + ", " + attributes2 + ", "
+                                                   + table2.name + ")");
+        QueryCache.Key ck  = cacheKey (table2, "semiJoin", attributes1, attributes2);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        return remember (ck, filterJoin (attributes1, attributes2, table2, false));
+    } // semiJoin
+
+    /************************************************************************************
+     * Anti-join this table and table2: keep the tuples of this table that have no
+     * match in table2, requiring attributes1 to equal attributes2.
+     *
+     * #usage movie.antiJoin ("studioName", "name", studio)
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table in the anti-join operation
+     * @return  a table with the tuples of this table having no match
+     */
+    public Table antiJoin (String attributes1, String attributes2, Table table2)
+    {
+        trace ("RA> " + name + ".antiJoin (" + attributes1 + ", " + attributes2 + ", "
+                                                   + table2.name + ")");
+        QueryCache.Key ck  = cacheKey (table2, "antiJoin", attributes1, attributes2);
+        Table          hit = cached (ck);
+        if (hit != null) return hit;
+
+        return remember (ck, filterJoin (attributes1, attributes2, table2, true));
+    } // antiJoin
+
     /************************************************************************************
      * Return the column position for the given attribute name.
      *
@@ -511,20 +1024,142 @@ public class Table
      */
     public boolean insert (Comparable [] tup)
     {
-        out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        trace ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        if (shared ("insert")) return false;
+        materialize ();
 
         if (typeCheck (tup)) {
+            encode (tup);
             tuples.add (tup);
+            if (zones != null) zones.extend (tuples);
             Comparable [] keyVal = new Comparable [key.length];
             int []        cols   = match (key);
             for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
             index.put (new KeyType (keyVal), tup);
+            bump (tup);
             return true;
         } else {
             return false;
         } // if
     } // insert
 
+    /************************************************************************************
+     * Update the tuple with the given key value.  The function receives a copy of the
+     * tuple and returns its new value, which replaces the stored tuple: the old tuple
+     * is left as a tombstone and the new one appended, so tables derived from this one
+     * (which share its tuples) keep the old value.  The index is re-keyed if the key
+     * changes; an update that would collide with another tuple's key is rejected.
+     *
+     * #usage movie.update (new KeyType ("Rocky", 1985), t -> { t[2] = 119; return t; })
+     *
+     * @param keyVal  the key value of the tuple to update
+     * @param fn      the function computing the new tuple from (a copy of) the old one
+     * @return  whether the update was successful
+     */
+    public boolean update (KeyType keyVal, Function <Comparable [], Comparable []> fn)
+    {
+        trace ("DML> update " + name + " where " + keyVal);
+        if (shared ("update") || appendOnly ("update")) return false;
+        materialize ();
+        if (derived ("update")) return false;
+
+        Comparable [] tup = index.get (keyVal);
+        if (tup == null) return false;
+        Comparable [] newTup = update (keyVal, tup, fn);
+        if (newTup == null) return false;
+        deleted.add (tup);
+        tuples.add (newTup);
+        if (zones != null) zones.extend (tuples);
+        bump (null);
+        return true;
+    } // update
+
+    /************************************************************************************
+     * Update every tuple satisfying the given predicate (see update (KeyType, Function)).
+     * Each updated tuple is replaced by its new value in the same position.
+     *
+     * #usage movie.update (t -> t[movie.col("genre")].equals ("sciFi"),
+     *                      t -> { t[movie.col("genre")] = "scienceFiction"; return t; })
+     *
+     * @param predicate  the check condition for tuples
+     * @param fn         the function computing the new tuple from (a copy of) the old one
+     * @return  the number of tuples updated
+     */
+    public int update (Predicate <Comparable []> predicate, Function <Comparable [], Comparable []> fn)
+    {
+        trace ("DML> update " + name + " where " + predicate);
+        if (shared ("update") || appendOnly ("update")) return 0;
+        materialize ();
+        if (derived ("update")) return 0;
+
+        int n = 0;
+        for (ListIterator <Comparable []> it = live ().listIterator (); it.hasNext (); ) {
+            Comparable [] tup = it.next ();
+            if (! predicate.test (tup)) continue;
+            Comparable [] newTup = update (keyOf (tup), tup, fn);
+            if (newTup == null) continue;
+            it.set (newTup);
+            n++;
+        } // for
+        if (n > 0) {
+            zones = null;
+            bump (null);
+        } // if
+        return n;
+    } // update
+
+    /************************************************************************************
+     * Delete the tuple with the given key value.  The tuple is removed from the index
+     * and left as a tombstone in the tuples list, so no list elements are shifted.
+     *
+     * #usage movie.delete (new KeyType ("Rocky", 1985))
+     *
+     * @param keyVal  the key value of the tuple to delete
+     * @return  whether a tuple was deleted
+     */
+    public boolean delete (KeyType keyVal)
+    {
+        trace ("DML> delete from " + name + " where " + keyVal);
+        if (shared ("delete") || appendOnly ("delete")) return false;
+        materialize ();
+        if (derived ("delete")) return false;
+
+        Comparable [] tup = index.remove (keyVal);
+        if (tup == null) return false;
+        deleted.add (tup);
+        bump (null);
+        return true;
+    } // delete
+
+    /************************************************************************************
+     * Delete every tuple satisfying the given predicate.  Since this scans the table
+     * anyway, the tuples are removed directly rather than left as tombstones.
+     *
+     * #usage movie.delete (t -> (Integer) t[movie.col("year")] < 1980)
+     *
+     * @param predicate  the check condition for tuples
+     * @return  the number of tuples deleted
+     */
+    public int delete (Predicate <Comparable []> predicate)
+    {
+        trace ("DML> delete from " + name + " where " + predicate);
+        if (shared ("delete") || appendOnly ("delete")) return 0;
+        materialize ();
+        if (derived ("delete")) return 0;
+
+        int n = live ().size ();
+        tuples.removeIf (t -> {
+            if (! predicate.test (t)) return false;
+            index.remove (keyOf (t));
+            return true;
+        });
+        if (n != tuples.size ()) {
+            zones = null;
+            bump (null);
+        } // if
+        return n - tuples.size ();
+    } // delete
+
     /************************************************************************************
      * Get the name of the table.
      *
@@ -535,10 +1170,93 @@ public class Table
         return name;
     } // getName
 
+    /************************************************************************************
+     * Get the primary key attributes of the table.
+     *
+     * @return  the table's key
+     */
+    public String [] getKey ()
+    {
+        return key.clone ();
+    } // getKey
+
+    /************************************************************************************
+     * Get the attribute names of the table.
+     *
+     * @return  the table's attributes
+     */
+    public String [] getAttribute ()
+    {
+        return attribute.clone ();
+    } // getAttribute
+
+    /************************************************************************************
+     * Get the attribute domains of the table.
+     *
+     * @return  the table's domains
+     */
+    public Class [] getDomain ()
+    {
+        return domain.clone ();
+    } // getDomain
+
+    /************************************************************************************
+     * Get the modification version of the table, which changes whenever its tuples do.
+     *
+     * @return  the table's version
+     */
+    public long getVersion ()
+    {
+        return version;
+    } // getVersion
+
+    /************************************************************************************
+     * Get the number of tuples in the table.
+     *
+     * @return  the table's size
+     */
+    public int size ()
+    {
+        return tuples.size () - deleted.size ();
+    } // size
+
+    /************************************************************************************
+     * Turn on caching of operator results (see QueryCache), or turn it off with null.
+     *
+     * #usage Table.setCache (new QueryCache (1_000_000))
+     *
+     * @param _cache  the result cache to use
+     */
+    public static void setCache (QueryCache _cache)
+    {
+        cache = _cache;
+    } // setCache
+
+    /************************************************************************************
+     * Get the result cache, e.g., to print its statistics.
+     *
+     * @return  the result cache (null when caching is off)
+     */
+    public static QueryCache getCache ()
+    {
+        return cache;
+    } // getCache
+
     /************************************************************************************
      * Print this table.
      */
     public void print ()
+    {
+        print (Integer.MAX_VALUE);
+    } // print
+
+    /************************************************************************************
+     * Print the first n tuples of this table in tabular form, followed by a count of
+     * the tuples not printed.
+     *
+     * @param n  the maximum number of tuples to print
+     */
+    public void print (int n)
     {
         out.println ("\n Table " + name);
         out.print ("|-");
@@ -550,11 +1268,15 @@ public class Table
         out.print ("|-");
         for (int i = 0; i < attribute.length; i++) out.print ("---------------");
         out.println ("-|");
-        for (Comparable [] tup : tuples) {
+        List <Comparable []> rows = live ();
+        for (Comparable [] tup : rows.subList (0, Math.min (Math.max (n, 0), rows.size ()))) {
             out.print ("| ");
             for (Comparable attr : tup) out.printf ("%15s", attr);
             out.println (" |");
         } // for
+        if (n < rows.size ()) {
+            out.printf ("| %" + (15 * attribute.length) + "s |%n", "... " + (rows.size () - Math.max (n, 0)) + " more");
+        } // if
         out.print ("|-");
         for (int i = 0; i < attribute.length; i++) out.print ("---------------");
         out.println ("-|");
@@ -573,6 +1295,27 @@ public class Table
         out.println ("-------------------");
     } // printIndex
 
+    /************************************************************************************
+     * Turn the echoing of DDL, DML and RA operations to standard output on or off
+     * (e.g., off when serving many concurrent sessions).
+     *
+     * @param on  whether to echo operations
+     */
+    public static void setTrace (boolean on)
+    {
+        trace = on;
+    } // setTrace
+
+    /************************************************************************************
+     * Set the memory budget for operators that spill to disk when it is exceeded.
+     *
+     * @param rows  the maximum number of tuples an operator may hold in memory
+     */
+    public static void setMemoryBudget (int rows)
+    {
+        budget = rows;
+    } // setMemoryBudget
+
     /************************************************************************************
      * Load the table with the given name into memory. 
      *
@@ -600,6 +1343,9 @@ public class Table
      */
     public void save ()
     {
+        materialize ();
+        live ();                             // compact tombstones before writing
+        zoneMap ();                          // and save the zone map up to date
         try {
             ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
             oos.writeObject (this);
@@ -610,6 +1356,225 @@ public class Table
         } // try
     } // save
 
+    /************************************************************************************
+     * Save this table in a compressed segment file (see SegmentFile), where each column
+     * is encoded on its own and can later be loaded without decoding the others.
+     */
+    public void saveCompressed ()
+    {
+        materialize ();                      // the file may be the one mapped
+        try {
+            SegmentFile.write (DIR + name + SEG, name, attribute, domain, key, live ());
+        } catch (IOException ex) {
+            out.println ("saveCompressed: IO Exception");
+            ex.printStackTrace ();
+        } // try
+    } // saveCompressed
+
+    /************************************************************************************
+     * Load the table with the given name from its compressed segment file.
+     *
+     * @param name  the name of the table to load
+     */
+    public static Table loadCompressed (String name)
+    {
+        return loadCompressed (name, null);
+    } // loadCompressed
+
+    /************************************************************************************
+     * Load only the given attributes of the table with the given name from its
+     * compressed segment file.  Column chunks of the other attributes are not decoded.
+     * As in project, the key is kept only if all key attributes are loaded.
+     *
+     * #usage Table.loadCompressed ("movie", "title year")
+     *
+     * @param name        the name of the table to load
+     * @param attributes  the attributes to load (null for all)
+     */
+    public static Table loadCompressed (String name, String attributes)
+    {
+        Table tab = null;
+        try {
+            SegmentFile seg = SegmentFile.open (DIR + name + SEG);
+            String [] attrs = (attributes == null) ? seg.attribute : attributes.split (" ");
+            int []    cols  = seg.match (attrs);
+            Class []  dom   = new Class [cols.length];
+            ColumnDictionary [] dicts = new ColumnDictionary [cols.length];
+            for (int j = 0; j < cols.length; j++) {
+                if (cols [j] < 0) throw new IOException ("attribute not found: " + attrs [j]);
+                dom [j]   = seg.domain [cols [j]];
+                dicts [j] = seg.dict [cols [j]];
+            } // for
+
+            boolean keyKept = Arrays.asList (attrs).containsAll (Arrays.asList (seg.key));
+            tab = new Table (name, attrs, dom, keyKept ? seg.key : attrs, seg.read (cols), dicts);
+            if (keyKept) tab.buildIndex ();
+        } catch (IOException ex) {
+            out.println ("loadCompressed: IO Exception");
+            ex.printStackTrace ();
+        } // try
+        return tab;
+    } // loadCompressed
+
+    /************************************************************************************
+     * Load the table with the given name lazily from its compressed segment file.  The
+     * file is memory mapped and only its header, directory and key index are read; row
+     * groups are decoded when first accessed, so a key lookup on a freshly loaded table
+     * decodes just one row group.  The table is read in full before its first
+     * modification.  A file without a key index is loaded in full (see loadCompressed).
+     *
+     * #usage Table.loadMapped ("movie")
+     *
+     * @param name  the name of the table to load
+     */
+    public static Table loadMapped (String name)
+    {
+        Table tab = null;
+        try {
+            SegmentFile seg = SegmentFile.open (DIR + name + SEG);
+            if (! seg.hasKeyIndex ()) {
+                out.println ("loadMapped: no key index in " + name + SEG + ", loading it in full");
+                return loadCompressed (name);
+            } // if
+            seg.map ();
+            MappedTuples rows = new MappedTuples (seg, Math.max (2, budget / SegmentFile.GROUP));
+            tab = new Table (name, seg.attribute, seg.domain, seg.key, rows, seg.dict);
+            tab.index = new MappedTuples.KeyIndex (rows);
+        } catch (IOException ex) {
+            out.println ("loadMapped: IO Exception");
+            ex.printStackTrace ();
+        } // try
+        return tab;
+    } // loadMapped
+
+    //----------------------------------------------------------------------------------
+    // Package Methods
+    //----------------------------------------------------------------------------------
+
+    /************************************************************************************
+     * Check that the index maps the key of every live tuple to a live tuple with that
+     * key, and rebuild it if not (e.g., a file saved by an older version).  Only
+     * in-memory (TreeMap) indexes are checked.  The check must not run concurrently
+     * with other uses of the table, so call it before the table is shared (as
+     * Database does when loading).
+     *
+     * @return  whether the index was valid
+     */
+    boolean verifyIndex ()
+    {
+        Map <KeyType, Comparable []> idx = index;
+        if (! (idx instanceof TreeMap)) return true;
+        List <Comparable []> rows = live ();
+
+        Set <Comparable []> in = Collections.newSetFromMap (new IdentityHashMap <> ());
+        in.addAll (rows);
+        boolean ok = idx.size () <= rows.size ();
+        for (Iterator <Map.Entry <KeyType, Comparable []>> it = idx.entrySet ().iterator (); ok && it.hasNext (); ) {
+            Map.Entry <KeyType, Comparable []> e = it.next ();
+            ok = in.contains (e.getValue ()) && keyOf (e.getValue ()).equals (e.getKey ());
+        } // for
+        for (int i = 0; ok && i < rows.size (); i++) ok = idx.containsKey (keyOf (rows.get (i)));
+        if (ok) return true;
+
+        buildIndex ();
+        out.println ("verifyIndex: rebuilt the index of " + name);
+        return false;
+    } // verifyIndex
+
+    /************************************************************************************
+     * Return whether a tuple with the same primary key value as tup is indexed.
+     *
+     * @param tup  the tuple
+     * @return  whether the key value is present
+     */
+    boolean containsKey (Comparable [] tup)
+    {
+        return index.containsKey (keyOf (tup));
+    } // containsKey
+
+    /************************************************************************************
+     * Register a materialized view to be told of changes to this table.
+     *
+     * @param v  the view
+     */
+    void addView (MaterializedView v)
+    {
+        if (views == null) views = new ArrayList <> ();
+        if (! views.contains (v)) views.add (v);
+    } // addView
+
+    /************************************************************************************
+     * Return the live tuples of this table (not to be modified by the caller).
+     *
+     * @return  the list of tuples
+     */
+    List <Comparable []> rows ()
+    {
+        return live ();
+    } // rows
+
+    /************************************************************************************
+     * Return the column positions of the given attributes.
+     *
+     * @param attrs  the attribute names
+     * @return  the column positions
+     */
+    int [] cols (String [] attrs)
+    {
+        return match (attrs);
+    } // cols
+
+    /************************************************************************************
+     * Concatenate the tuples of tables with the same schema (e.g., the partitions of a
+     * PartitionedTable or results computed from them) into one table.
+     *
+     * @param name    the base name of the result
+     * @param tables  the tables to concatenate (at least one)
+     * @return  a table holding the tuples of all the tables
+     */
+    static Table concat (String name, List <Table> tables)
+    {
+        Table first = tables.get (0);
+        int   n     = 0;
+        for (Table t : tables) n += t.size ();
+
+        List <Comparable []> rows = new ArrayList <> (n);
+        for (Table t : tables) rows.addAll (t.live ());
+        Table result = new Table (name + count.getAndIncrement (), first.attribute, first.domain, first.key, rows);
+        result.derived = true;
+        return result;
+    } // concat
+
+    /************************************************************************************
+     * Return this table, or if it is a cached result (which is shared and read-only),
+     * a table of its own with the same tuples, e.g., to be maintained as a view.
+     *
+     * @return  a table that is not a cached result
+     */
+    Table unshared ()
+    {
+        if (! shared) return this;
+        Table t = new Table (name + count.getAndIncrement (), attribute, domain, key, new ArrayList <> (live ()), dict);
+        t.derived = derived;
+        return t;
+    } // unshared
+
+    /************************************************************************************
+     * Append a tuple computed by the engine (e.g., a view delta), bypassing the
+     * type check, index and DML trace of insert.  Cached results are refused.
+     *
+     * @param tup  the tuple to append
+     */
+    void append (Comparable [] tup)
+    {
+        if (shared ("append")) return;
+        materialize ();
+        encode (tup);
+        tuples.add (tup);
+        if (zones != null) zones.extend (tuples);
+        bump (tup);
+    } // append
+
     //----------------------------------------------------------------------------------
     // Private Methods
     //----------------------------------------------------------------------------------
@@ -677,6 +1642,20 @@ public class Table
         return tup;
     } // extract
 
+    /************************************************************************************
+     * Extract the given column positions from tuple t.
+     *
+     * @param t       the tuple to extract from
+     * @param colPos  the column positions
+     * @return  a smaller tuple extracted from tuple t
+     */
+    private static Comparable [] extract (Comparable [] t, int [] colPos)
+    {
+        Comparable [] tup = new Comparable [colPos.length];
+        for (int j = 0; j < colPos.length; j++) tup [j] = t [colPos [j]];
+        return tup;
+    } // extract
+
     /************************************************************************************
      * Check the size of the tuple (number of elements in list) as well as the type of
      * each value to ensure it is from the right domain. 
@@ -714,6 +1693,403 @@ public class Table
         return classArray;
     } // findClass
 
+    /************************************************************************************
+     * Echo an operation to standard output if tracing is on.
+     *
+     * @param line  the operation to echo
+     */
+    private static void trace (String line)
+    {
+        if (trace) out.println (line);
+    } // trace
+
+    /************************************************************************************
+     * Record a modification: bump the version, drop cached results computed from this
+     * table, and pass the change on to the materialized views defined over it.
+     *
+     * @param inserted  the inserted tuple (null for an update or delete)
+     */
+    private void bump (Comparable [] inserted)
+    {
+        version++;
+        if (cache != null) cache.invalidate (this);
+        if (views == null) return;
+        for (MaterializedView v : views) {
+            if (inserted != null) v.onInsert (this, inserted);
+            else                  v.onChange (this);
+        } // for
+    } // bump
+
+    /************************************************************************************
+     * Build the result cache key for applying an operator to this table (and table2).
+     *
+     * @param table2  the rhs table of a binary operator (null for a unary operator)
+     * @param op      the operator name followed by its arguments
+     * @return  the cache key, or null when caching is off
+     */
+    private QueryCache.Key cacheKey (Table table2, Object ... op)
+    {
+        if (cache == null) return null;
+        Table [] in = (table2 == null) ? new Table [] { this } : new Table [] { this, table2 };
+        return new QueryCache.Key (Arrays.asList (op), in);
+    } // cacheKey
+
+    /************************************************************************************
+     * Look up a cached result.
+     *
+     * @param ck  the cache key (null when caching is off)
+     * @return  the cached result, or null on a miss
+     */
+    private static Table cached (QueryCache.Key ck)
+    {
+        return (ck == null || cache == null) ? null : cache.get (ck);
+    } // cached
+
+    /************************************************************************************
+     * Mark a newly computed operator result as derived and cache it, after which it is
+     * also shared.  Both make it read-only.
+     *
+     * @param ck      the cache key (null when caching is off)
+     * @param result  the result table
+     * @return  the result table
+     */
+    private static Table remember (QueryCache.Key ck, Table result)
+    {
+        result.derived = true;
+        if (ck != null && cache != null) {
+            result.shared = true;
+            cache.put (ck, result);
+        } // if
+        return result;
+    } // remember
+
+    /************************************************************************************
+     * Return the live tuples, first compacting away any tombstones left by delete.
+     * Compaction is deferred to the next scan, which is linear anyway, so deleting
+     * a tuple by key costs no list shifting.
+     *
+     * @return  the list of live tuples
+     */
+    private List <Comparable []> live ()
+    {
+        if (! deleted.isEmpty ()) {
+            tuples.removeIf (deleted::contains);
+            deleted.clear ();
+            zones = null;                                                // rows have moved
+        } // if
+        return tuples;
+    } // live
+
+    /************************************************************************************
+     * Return the zone map of the tuples, first building it if it was dropped and
+     * summarizing any tuples added since it was last used.
+     *
+     * @return  the zone map
+     */
+    private synchronized ZoneMap zoneMap ()
+    {
+        if (zones == null) zones = new ZoneMap (domain);
+        zones.extend (tuples);
+        return zones;
+    } // zoneMap
+
+    /************************************************************************************
+     * Scan the live tuples for those satisfying the test, skipping the blocks in which
+     * the zone map shows no value of column c can satisfy "value op v".
+     *
+     * @param c      the column position of the compared attribute
+     * @param op     the comparison operator (= != < <= > >=)
+     * @param value  the value compared with
+     * @param test   the check condition for tuples
+     * @return  the tuples satisfying the test
+     */
+    private List <Comparable []> scan (int c, String op, Comparable value, Predicate <Comparable []> test)
+    {
+        List <Comparable []> all  = live ();
+        ZoneMap              zm   = zoneMap ();
+        List <Comparable []> rows = new ArrayList <> ();
+        for (int b = 0; b < zm.blocks (); b++) {
+            if (! zm.mayMatch (b, c, op, value)) continue;
+            for (int i = b * ZoneMap.BLOCK, end = Math.min (i + ZoneMap.BLOCK, all.size ()); i < end; i++) {
+                Comparable [] t = all.get (i);
+                if (test.test (t)) rows.add (t);
+            } // for
+        } // for
+        return rows;
+    } // scan
+
+    /************************************************************************************
+     * Read a lazily loaded (mapped) table in full, replacing its tuple list and index
+     * by in-memory ones, so that it can be modified.
+     */
+    private void materialize ()
+    {
+        if (! (tuples instanceof MappedTuples)) return;
+        tuples = new ArrayList <> (tuples);
+        index  = new TreeMap <> ();
+        buildIndex ();
+    } // materialize
+
+    /************************************************************************************
+     * Return the index as a map in the given order if the order is the primary key,
+     * all ascending or all descending, and the index covers every tuple (result
+     * tables of operators are not indexed).
+     *
+     * @param order  the ordering
+     * @return  the index in that order, or null
+     */
+    @SuppressWarnings("unchecked")
+    private NavigableMap <KeyType, Comparable []> keyOrder (SortOrder order)
+    {
+        if (! (index instanceof NavigableMap) || index.size () != size ()) return null;
+        if (! Arrays.equals (order.cols, match (key))) return null;
+        for (boolean d : order.desc) if (d != order.desc [0]) return null;
+
+        NavigableMap <KeyType, Comparable []> sorted = (NavigableMap <KeyType, Comparable []>) index;
+        return order.desc [0] ? sorted.descendingMap () : sorted;
+    } // keyOrder
+
+    /************************************************************************************
+     * Report whether this table's tuples are off-heap, where they cannot be modified.
+     *
+     * @param op  the name of the rejected operation
+     * @return  whether the table is append-only
+     */
+    private boolean appendOnly (String op)
+    {
+        if (! (tuples instanceof OffHeapStore)) return false;
+        out.println (op + ": off-heap table " + name + " is append-only");
+        return true;
+    } // appendOnly
+
+    /************************************************************************************
+     * Report whether this table is a cached operator result (see QueryCache), which is
+     * returned to every caller asking for it and so cannot be modified.
+     *
+     * @param op  the name of the rejected operation
+     * @return  whether the table is a cached result
+     */
+    private boolean shared (String op)
+    {
+        if (! shared) return false;
+        out.println (op + ": table " + name + " is a cached result and cannot be modified");
+        return true;
+    } // shared
+
+    /************************************************************************************
+     * Report whether this table was derived from others by an operator (e.g., a select
+     * result): it shares its tuples with the tables it came from and its index need not
+     * cover them, so it cannot be modified.
+     *
+     * @param op  the name of the rejected operation
+     * @return  whether the table is derived
+     */
+    private boolean derived (String op)
+    {
+        if (! derived) return false;
+        out.println (op + ": table " + name + " is derived from another table and cannot be modified");
+        return true;
+    } // derived
+
+    /************************************************************************************
+     * Return the primary key value of tuple t.
+     *
+     * @param t  the tuple
+     * @return  the key value of t
+     */
+    private KeyType keyOf (Comparable [] t)
+    {
+        int []        cols   = match (key);
+        Comparable [] keyVal = new Comparable [key.length];
+        for (int j = 0; j < keyVal.length; j++) keyVal [j] = t [cols [j]];
+        return new KeyType (keyVal);
+    } // keyOf
+
+    /************************************************************************************
+     * Compute the new value of the stored tuple tup (with key value keyVal) and point
+     * the index at it.  The stored tuple itself is not modified, since tables derived
+     * from this one share it; the caller replaces it in the tuples list.
+     *
+     * @param keyVal  the current key value of tup
+     * @param tup     the stored tuple
+     * @param fn      the function computing the new tuple from (a copy of) the old one
+     * @return  the new tuple, or null if the update was rejected
+     */
+    private Comparable [] update (KeyType keyVal, Comparable [] tup, Function <Comparable [], Comparable []> fn)
+    {
+        Comparable [] newTup = fn.apply (tup.clone ());
+        if (newTup == null || newTup.length != tup.length || ! typeCheck (newTup)) return null;
+
+        KeyType newKey = keyOf (newTup);
+        if (! newKey.equals (keyVal) && index.containsKey (newKey)) {
+            out.println ("update: duplicate key " + newKey);
+            return null;
+        } // if
+
+        encode (newTup);
+        index.remove (keyVal);
+        index.put (newKey, newTup);
+        return newTup;
+    } // update
+
+    /************************************************************************************
+     * Convert a table read from a file written before the tables had dictionaries and
+     * tombstones (the fields are then null): rebuild it with its STRING values encoded
+     * in new dictionaries and a new index.  Later fields (version, zone map) start
+     * empty.  Other tables are returned as read.
+     *
+     * @return  the table to use
+     */
+    private Object readResolve ()
+    {
+        if (dict != null && deleted != null) return this;
+        Table tab = new Table (name, attribute, domain, key, new ArrayList <> (tuples));
+        tab.buildIndex ();
+        return tab;
+    } // readResolve
+
+    /************************************************************************************
+     * Rebuild the index from the tuples.
+     */
+    private void buildIndex ()
+    {
+        if (index instanceof OffHeapStore.KeyIndex) {                  // indexes rows by position
+            ((OffHeapStore.KeyIndex) index).rebuild ();
+            return;
+        } // if
+        int [] cols = match (key);
+        index.clear ();
+        for (Comparable [] tup : live ()) {
+            Comparable [] keyVal = new Comparable [key.length];
+            for (int j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
+            index.put (new KeyType (keyVal), tup);
+        } // for
+    } // buildIndex
+
+    /************************************************************************************
+     * Create a dictionary for each STRING domain (String, Character) column.
+     *
+     * @param dom  the attribute domains
+     * @return  an array of dictionaries, null for non-STRING columns
+     */
+    private static ColumnDictionary [] makeDicts (Class [] dom)
+    {
+        ColumnDictionary [] dicts = new ColumnDictionary [dom.length];
+
+        for (int j = 0; j < dom.length; j++) {
+            if (dom [j] == String.class || dom [j] == Character.class) {
+                dicts [j] = new ColumnDictionary ();
+            } // if
+        } // for
+
+        return dicts;
+    } // makeDicts
+
+    /************************************************************************************
+     * Replace the STRING values of tuple t by their canonical dictionary instances.
+     *
+     * @param t  the tuple to encode (modified in place)
+     */
+    private void encode (Comparable [] t)
+    {
+        for (int j = 0; j < dict.length && j < t.length; j++) {
+            if (dict [j] != null && t [j] != null) t [j] = dict [j].intern (t [j]);
+        } // for
+    } // encode
+
+    /************************************************************************************
+     * Extract the dictionaries of the given columns.
+     *
+     * @param colPos  the column positions to extract
+     * @return  the extracted dictionaries
+     */
+    private ColumnDictionary [] extractDict (int [] colPos)
+    {
+        ColumnDictionary [] dicts = new ColumnDictionary [colPos.length];
+        for (int j = 0; j < colPos.length; j++) dicts [j] = dict [colPos [j]];
+        return dicts;
+    } // extractDict
+
+    /************************************************************************************
+     * Equi-join this table and table2 on one dictionary encoded column from each side.
+     * Tuples of table2 are bucketed by code, and the codes of this table are translated
+     * into table2's dictionary once.  Each probe looks up the code of its value in this
+     * table's dictionary (a hash lookup) and then finds its bucket by array lookups, so
+     * no values of table2 are hashed or compared.
+     * Probing stops once limit tuples have been produced.
+     *
+     * @param c1      the join column of this table
+     * @param c2      the join column of table2
+     * @param table2  the rhs table in the join operation
+     * @param rows    the list receiving the joined tuples
+     * @param limit   the maximum number of joined tuples
+     */
+    @SuppressWarnings("unchecked")
+    private void joinOnCodes (int c1, int c2, Table table2, List <Comparable []> rows, int limit)
+    {
+        ColumnDictionary d1 = dict [c1], d2 = table2.dict [c2];
+        List <Comparable []> [] bucket = new List [d2.size ()];
+
+        for (Comparable [] t2 : table2.live ()) {
+            int code = d2.code (t2 [c2]);
+            if (code < 0) continue;
+            if (bucket [code] == null) bucket [code] = new ArrayList <> ();
+            bucket [code].add (t2);
+        } // for
+
+        int [] xlate = d1.translate (d2);
+        for (Comparable [] t1 : live ()) {
+            int code = d1.code (t1 [c1]);
+            if (code < 0 || xlate [code] < 0 || bucket [xlate [code]] == null) continue;
+            for (Comparable [] t2 : bucket [xlate [code]]) {
+                if (rows.size () >= limit) return;
+                rows.add (ArrayUtil.concat (t1, t2));
+            } // for
+        } // for
+    } // joinOnCodes
+
+    /************************************************************************************
+     * Compute a semi-join or anti-join.  A hash set is built on the join attributes of
+     * the smaller side.  If that is table2, each tuple of this table is looked up in it.
+     * If it is this table, table2 is scanned to find which join values of this table
+     * have a match, and this table is then filtered on those.
+     *
+     * @param attributes1  the attributes of this table to be compared
+     * @param attributes2  the attributes of table2 to be compared
+     * @param table2       the rhs table
+     * @param anti         whether to keep the tuples without a match (anti-join)
+     * @return  a table with the selected tuples of this table
+     */
+    private Table filterJoin (String attributes1, String attributes2, Table table2, boolean anti)
+    {
+        int [] cols1 = match (attributes1.split (" "));
+        int [] cols2 = table2.match (attributes2.split (" "));
+        List <Comparable []> rows = new ArrayList <> ();
+
+        if (table2.live ().size () <= live ().size ()) {
+            Set <List <Comparable>> keys = new HashSet <> ();
+            for (Comparable [] t2 : table2.live ()) keys.add (Arrays.asList (extract (t2, cols2)));
+
+            for (Comparable [] t : live ()) {
+                if (keys.contains (Arrays.asList (extract (t, cols1))) != anti) rows.add (t);
+            } // for
+        } else {
+            Set <List <Comparable>> keys    = new HashSet <> ();
+            Set <List <Comparable>> matched = new HashSet <> ();
+            for (Comparable [] t : live ()) keys.add (Arrays.asList (extract (t, cols1)));
+
+            for (Comparable [] t2 : table2.live ()) {
+                List <Comparable> k = Arrays.asList (extract (t2, cols2));
+                if (keys.contains (k)) matched.add (k);
+            } // for
+            for (Comparable [] t : live ()) {
+                if (matched.contains (Arrays.asList (extract (t, cols1))) != anti) rows.add (t);
+            } // for
+        } // if
+
+        return new Table (name + count.getAndIncrement (), attribute, domain, key, rows, dict);
+    } // filterJoin
+
     /************************************************************************************
      * Extract the corresponding domains.
      *
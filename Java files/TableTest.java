@@ -0,0 +1,444 @@
+/****************************************************************************************
+ * @file  TableTest.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+import static java.lang.System.out;
+
+/****************************************************************************************
+ * The TableTest class checks the Table operators that modify tables, the selects
+ * that skip blocks using zone maps, and saving and loading tables.
+ *
+ * #usage java -ea TableTest
+ */
+class TableTest
+{
+    /** Number of checks passed. */
+    private static int passed = 0;
+
+    /************************************************************************************
+     * Run the checks, failing on the first that does not hold.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Table.setTrace (false);
+        updateDoesNotAlias ();
+        derivedIsReadOnly ();
+        zoneMapSelects ();
+        groupByChecksDomains ();
+        sharedDictionary ();
+        offHeapIndex ();
+        spillFiles ();
+        nullsSortFirst ();
+        cachedChains ();
+        semiAndAntiJoins ();
+        saveAndLoad ();
+        out.println ("TableTest: " + passed + " checks passed");
+    } // main
+
+    /************************************************************************************
+     * An update replaces the stored tuple, so results derived before it are unchanged,
+     * and the version, index and scans of the updated table all see the new value.
+     */
+    private static void updateDoesNotAlias ()
+    {
+        Table m = movies (3000);
+        Table before = m.select (t -> (Integer) t [0] == 5);
+        long  v      = m.getVersion ();
+
+        check (m.update (new KeyType (5), t -> { t [1] = 2500; return t; }), "update by key");
+        check (m.getVersion () > v, "update bumps the version");
+        check ((Integer) before.rows ().get (0) [1] != 2500, "earlier result keeps the old value");
+        check ((Integer) m.select (new KeyType (5)).rows ().get (0) [1] == 2500, "index sees the new value");
+        check (m.select ("year", ">", 2400).size () == 1, "zone map sees the new value");
+
+        Table all = m.select (t -> true);
+        check (m.update (t -> (Integer) t [0] < 10, t -> { t [1] = 2600; return t; }) == 10, "update by predicate");
+        check (m.select ("year", ">", 2550).size () == 10, "scan sees the updated tuples");
+        check (all.select ("year", ">", 2550).size () == 0, "earlier result keeps the old values");
+        check (m.size () == 3000 && m.select (t -> true).size () == 3000, "no tuple is lost or duplicated");
+    } // updateDoesNotAlias
+
+    /************************************************************************************
+     * Tables derived from another by an operator refuse updates and deletes, while a
+     * base table takes them whatever its index holds.
+     */
+    private static void derivedIsReadOnly ()
+    {
+        Table m = movies (100);
+        Table r = m.select (t -> (Integer) t [0] < 50);
+        long  v = m.getVersion ();
+
+        check (r.update (t -> true, t -> { t [0] = 99999; return t; }) == 0, "update of a result is refused");
+        check (! r.update (new KeyType (5), t -> t), "update by key of a result is refused");
+        check (r.delete (t -> true) == 0, "delete of a result is refused");
+        check (m.getVersion () == v, "base table is unchanged");
+        check (m.select (new KeyType (5)).size () == 1 && (Integer) m.select (new KeyType (5)).rows ().get (0) [0] == 5,
+               "base table keeps its tuple");
+
+        Table g = m.groupBy ("year", Aggregate.count ("id"));
+        check (g.update (t -> true, t -> t) == 0 && g.delete (t -> true) == 0, "result with a full index is refused too");
+
+        m.insert (new Comparable [] { 5, 1999, "dup" });                 // duplicate key
+        check (m.update (new KeyType (6), t -> { t [1] = 2001; return t; }), "base table with a duplicate takes updates");
+        check (m.delete (new KeyType (7)), "base table with a duplicate takes deletes");
+    } // derivedIsReadOnly
+
+    /************************************************************************************
+     * Comparison selects that skip blocks return the same tuples as a predicate select
+     * over every tuple, including for nulls and STRING values and after updates,
+     * deletes and inserts.
+     */
+    private static void zoneMapSelects ()
+    {
+        Table  m = movies (5000);
+        Random r = new Random (41);
+        for (int i = 0; i < 500; i++) {
+            m.insert (new Comparable [] { 5000 + i, r.nextInt (10) == 0 ? null : 1900 + r.nextInt (100),
+                                          r.nextInt (10) == 0 ? null : "t" + r.nextInt (6000) });
+        } // for
+        compareSelects (m, "after inserts");
+
+        m.delete (new KeyType (42));
+        m.update (new KeyType (4999), t -> { t [1] = 1800; t [2] = "new"; return t; });
+        m.delete (t -> (Integer) t [0] % 97 == 0);
+        compareSelects (m, "after updates and deletes");
+        check (m.select ("year", "=", 1800).size () == 1 && m.select ("title", "=", "new").size () == 1,
+               "updated values are found");
+        check (m.select ("title", "=", "absent").size () == 0 && m.select ("title", "absent").size () == 0,
+               "absent value is not found");
+    } // zoneMapSelects
+
+    /************************************************************************************
+     * Check the comparison selects on the year and title of a movies table against
+     * predicate selects.
+     *
+     * @param m     the movies table
+     * @param when  when the check is made
+     */
+    @SuppressWarnings("unchecked")
+    private static void compareSelects (Table m, String when)
+    {
+        Comparable [][] probe = { { 1, 1905 }, { 1, 1950 }, { 1, 2100 }, { 2, "t1234" }, { 2, "t4" } };
+        for (String op : new String [] { "=", "!=", "<", "<=", ">", ">=" }) {
+            IntPredicate test = c -> (op.equals ("=")  && c == 0) || (op.equals ("!=") && c != 0)
+                                  || (op.equals ("<")  && c < 0)  || (op.equals ("<=") && c <= 0)
+                                  || (op.equals (">")  && c > 0)  || (op.equals (">=") && c >= 0);
+            for (Comparable [] p : probe) {
+                int        c     = (Integer) p [0];
+                Comparable v     = p [1];
+                int        scan  = m.select (t -> t [c] != null && test.test (t [c].compareTo (v))).size ();
+                String     attr  = (c == 1) ? "year" : "title";
+                check (m.select (attr, op, v).size () == scan, attr + " " + op + " " + v + " " + when);
+            } // for
+        } // for
+    } // compareSelects
+
+    /************************************************************************************
+     * SUM and AVG are computed on numeric attributes, skipping nulls, and rejected on
+     * STRING ones, as a missing attribute is.
+     */
+    private static void groupByChecksDomains ()
+    {
+        Table m   = movies (1000);
+        Table sum = m.groupBy ("year", Aggregate.sum ("id"), Aggregate.min ("title"));
+        check (sum.size () == 10 && sum.select (new KeyType (1900)).rows ().get (0) [1].equals (4950L),
+               "sum of an INTEGER attribute");
+        for (Aggregate a : new Aggregate [] { Aggregate.sum ("title"), Aggregate.avg ("title"), Aggregate.sum ("absent") }) {
+            check (m.groupBy ("year", a) == null, a + " is rejected");
+        } // for
+
+        String []     doms = { "Integer", "Long", "Short", "Double", "Float" };
+        Comparable [] two  = { 2, 2L, (short) 2, 2.0, 2.0f };
+        for (int d = 0; d < doms.length; d++) {
+            Table n = new Table ("n", "id g x", "Integer Integer " + doms [d], "id");
+            for (int i = 0; i < 20000; i++) n.insert (new Comparable [] { i, i % 3, (i % 3 == 0) ? null : two [d] });
+            for (int budget : new int [] { 1 << 20, 1 }) {                 // in memory (parallel) and spilled
+                Table.setMemoryBudget (budget);
+                try {
+                    Table         g    = n.groupBy ("g", Aggregate.sum ("x"), Aggregate.avg ("x"), Aggregate.count ("x"));
+                    Comparable [] none = g.select (new KeyType (0)).rows ().get (0);
+                    Comparable [] some = g.select (new KeyType (1)).rows ().get (0);
+                    check (none [1] == null && none [2] == null && none [3].equals (0L), "all-null group of " + doms [d]);
+                    check (((Number) some [1]).intValue () == 13334 && ((Number) some [2]).doubleValue () == 2.0,
+                           "nulls skipped in a group of " + doms [d]);
+                } finally {
+                    Table.setMemoryBudget (1 << 20);                     // the default
+                } // try
+            } // for
+        } // for
+    } // groupByChecksDomains
+
+    /************************************************************************************
+     * A dictionary shared by concurrent derived tables assigns each value exactly one
+     * code, and every code decodes back to its value.
+     */
+    private static void sharedDictionary ()
+    {
+        ColumnDictionary d = new ColumnDictionary ();
+        java.util.stream.IntStream.range (0, 200_000).parallel ().forEach (i -> {
+            String v = "v" + (i % 50_000);
+            int    c = d.encode (v);
+            if (! d.decode (c).equals (v)) throw new AssertionError ("TableTest: code " + c + " decodes to " + v);
+        });
+        check (d.size () == 50_000, "each value is added once");
+        int [] xlate = d.translate (d);
+        boolean same = true;
+        for (int c = 0; c < xlate.length; c++) same &= xlate [c] == c;
+        check (same, "translation to itself is the identity");
+    } // sharedDictionary
+
+    /************************************************************************************
+     * The off-heap key index indexes only the row just appended, refusing any other,
+     * and can be rebuilt from all the rows.
+     */
+    private static void offHeapIndex ()
+    {
+        Table m = new Table ("m", "id year title", "Integer Integer String", "id", true);
+        for (int i = 0; i < 3000; i++) m.insert (new Comparable [] { i, 1900 + i / 100, "t" + i });
+        check (m.verifyIndex (), "index built by inserts is valid");
+
+        ColumnDictionary []   dicts = { null, null, new ColumnDictionary () };
+        OffHeapStore          store = new OffHeapStore (m.getDomain (), dicts);
+        OffHeapStore.KeyIndex index = new OffHeapStore.KeyIndex (store, new int [] { 0 });
+        for (int i = 0; i < 300; i++) {
+            Comparable [] t = { i, 1900 + i, "t" + i };
+            store.add (t);
+            index.put (new KeyType (i), t);
+        } // for
+        try {
+            index.put (new KeyType (5), store.get (5));
+            check (false, "put of an earlier row is refused");
+        } catch (IllegalArgumentException ex) {
+            check (true, "put of an earlier row is refused");
+        } // try
+        index.rebuild ();
+        check (index.size () == 300 && (Integer) index.get (new KeyType (5)) [1] == 1905
+                                    && (Integer) index.get (new KeyType (299)) [1] == 2199, "rebuilt index");
+    } // offHeapIndex
+
+    /************************************************************************************
+     * Operators over the memory budget give the same results as in memory and leave no
+     * spill files behind, and closing a spill file closes the readers left open.
+     */
+    private static void spillFiles ()
+    {
+        Table m     = movies (20000);
+        Table group = m.groupBy ("title", Aggregate.count ("id"));
+        Table dist  = m.project ("year title");
+        Table sort  = m.orderBy ("title");
+        Table.setMemoryBudget (500);
+        try {
+            check (m.groupBy ("title", Aggregate.count ("id")).size () == group.size (), "spilled groupBy");
+            check (m.project ("year title").size () == dist.size (), "spilled distinct");
+            Table.setMemoryBudget (50);
+            List <Comparable []>    rows  = m.project ("year").rows ();
+            Set <List <Comparable>> years = new HashSet <> ();
+            for (Comparable [] t : rows) years.add (Arrays.asList (t));
+            check (rows.size () == 200 && years.size () == 200, "spilled distinct keeps every value once");
+            Table.setMemoryBudget (500);
+            check (sameRows (movies (20000, true).orderBy ("title"), sort), "spilled sort of an off-heap table");
+        } finally {
+            Table.setMemoryBudget (1 << 20);                             // the default
+        } // try
+        check (spills () == 0, "spill files are deleted");
+
+        Comparator <Comparable []> byTitle = Comparator.comparing (t -> (String) t [2]);
+        try (ExternalSort.Sorted sorted = ExternalSort.sort (m.rows ().iterator (), byTitle.reversed (), 1000)) {
+            check (sorted.spilled () && spills () == 20, "sort streams the merge of its runs");
+            check (sorted.next () [2].equals ("t9999"), "merge starts with the first tuple");
+        } // try
+        check (spills () == 0, "closing the sort deletes its runs");
+
+        try {
+            SpillFile sf = new SpillFile ();                             // closed with a reader open
+            for (int i = 0; i < 10; i++) sf.add (new Comparable [] { i });
+            SpillFile.Reader r = sf.iterator ();
+            check ((Integer) r.next () [0] == 0 && r.hasNext (), "reader reads in order");
+            sf.close ();
+            check (! r.hasNext () && spills () == 0, "close closes the reader and deletes the file");
+        } catch (IOException ex) {
+            throw new UncheckedIOException (ex);
+        } // try
+    } // spillFiles
+
+    /************************************************************************************
+     * Return the number of spill files in the storage directory.
+     *
+     * @return  the spill file count
+     */
+    private static int spills ()
+    {
+        String [] fns = new File (Table.DIR).list ((d, fn) -> fn.startsWith ("spill") && fn.endsWith (".tmp"));
+        return (fns == null) ? 0 : fns.length;
+    } // spills
+
+    /************************************************************************************
+     * Nulls sort first in both ascending and descending order, in memory, spilled and
+     * in a top-k.
+     */
+    private static void nullsSortFirst ()
+    {
+        Table m = new Table ("m", "id year title", "Integer Integer String", "id");
+        Table o = new Table ("o", "id year title", "Integer Integer String", "id", true);
+        for (int i = 0; i < 2000; i++) {
+            m.insert (new Comparable [] { i, i % 7 == 0 ? null : 1900 + i % 100, "t" + i });
+            o.insert (new Comparable [] { i, i % 7 == 0 ? null : 1900 + i % 100, "t" + i });
+        } // for
+        for (String spec : new String [] { "year", "year DESC", "year DESC id" }) {
+            List <Comparable []> rows = m.orderBy (spec).rows ();
+            check (rows.get (0) [1] == null && rows.get (285) [1] == null && rows.get (286) [1] != null,
+                   "nulls first for " + spec);
+            check (m.topK (3, spec).rows ().get (2) [1] == null, "nulls first in top-k for " + spec);
+        } // for
+        List <Comparable []> desc = m.orderBy ("year DESC").rows ();
+        check ((Integer) desc.get (286) [1] == 1999, "values descend after the nulls");
+
+        Table.setMemoryBudget (100);
+        try {
+            check (sameRows (o.orderBy ("year DESC"), m.orderBy ("year DESC")), "nulls first when spilled");
+        } finally {
+            Table.setMemoryBudget (1 << 20);                             // the default
+        } // try
+    } // nullsSortFirst
+
+    /************************************************************************************
+     * A chain of operators hits the result cache at every step when repeated, cached
+     * results cannot be modified, and modifying an input table invalidates them.
+     */
+    private static void cachedChains ()
+    {
+        QueryCache cache = new QueryCache (1_000_000);
+        Table.setCache (cache);
+        try {
+            Table                     m    = movies (1000);
+            Predicate <Comparable []> p    = t -> (Integer) t [0] < 500;
+            Table                     r1   = m.select (p).project ("year").orderBy ("year");
+            long                      miss = cache.getMisses ();
+            Table                     r2   = m.select (p).project ("year").orderBy ("year");
+            check (r2 == r1 && cache.getHits () == 3 && cache.getMisses () == miss, "each step of the chain hits");
+
+            check (! r1.insert (new Comparable [] { 1800 }) && r1.size () == 5, "cached result refuses inserts");
+            check (m.select (p).delete (t -> true) == 0, "cached result refuses deletes");
+
+            m.insert (new Comparable [] { -1, 1800, "new" });
+            check (m.select (p).project ("year").orderBy ("year").size () == 6, "insert invalidates the chain");
+        } finally {
+            Table.setCache (null);
+        } // try
+    } // cachedChains
+
+    /************************************************************************************
+     * Semi-joins and anti-joins keep the tuples of the lhs with and without a match,
+     * whichever side is smaller, matching on several attributes and on nulls.
+     */
+    private static void semiAndAntiJoins ()
+    {
+        Table m = movies (3000);
+        Table s = new Table ("s", "y t", "Integer String", "t");
+        for (int i = 0; i < 300; i += 3) s.insert (new Comparable [] { 1900 + i / 100, "t" + i });
+        Table big = new Table ("b", "y t", "Integer String", "t");
+        for (int i = 0; i < 9000; i += 2) big.insert (new Comparable [] { 1900 + i / 100, "t" + i });
+        m.insert (new Comparable [] { 3000, null, "t9001" });
+        big.insert (new Comparable [] { null, "t9001" });
+
+        for (Table r : new Table [] { s, big }) {
+            Set <List <Comparable>> keys = new HashSet <> ();
+            for (Comparable [] t : r.rows ()) keys.add (Arrays.asList (t));
+            int expect = m.select (t -> keys.contains (Arrays.asList (t [1], t [2]))).size ();
+            Table semi = m.semiJoin ("year title", "y t", r);
+            Table anti = m.antiJoin ("year title", "y t", r);
+            check (semi.size () == expect && semi.size () > 0, "semi-join with " + r.rows ().size () + " rhs tuples");
+            check (anti.size () == m.size () - expect, "anti-join with " + r.rows ().size () + " rhs tuples");
+            check (semi.select (t -> ! keys.contains (Arrays.asList (t [1], t [2]))).size () == 0
+                   && anti.select (t -> keys.contains (Arrays.asList (t [1], t [2]))).size () == 0, "no tuple on the wrong side");
+        } // for
+    } // semiAndAntiJoins
+
+    /************************************************************************************
+     * A saved table loads with its tuples, index and zone map, and the serialized form
+     * keeps the version of the first release so files written by it still load.
+     */
+    private static void saveAndLoad ()
+    {
+        check (ObjectStreamClass.lookup (Table.class).getSerialVersionUID () == 195556944384432319L,
+               "Table keeps its serialized form version");
+        check (ObjectStreamClass.lookup (KeyType.class).getSerialVersionUID () == -7485454919318814815L,
+               "KeyType keeps its serialized form version");
+
+        new File (Table.DIR).mkdirs ();
+        Table m = new Table ("tabletest", "id year title", "Integer Integer String", "id");
+        for (int i = 0; i < 3000; i++) m.insert (new Comparable [] { i, 1900 + i / 100, "t" + (i % 10) });
+        m.delete (new KeyType (7));
+        m.save ();
+
+        Table l = Table.load ("tabletest");
+        new File (Table.DIR + "tabletest.dbf").delete ();
+        check (l != null && l.size () == 2999, "loaded table has its tuples");
+        check (l.select (new KeyType (8)).size () == 1 && l.select (new KeyType (7)).size () == 0, "loaded index");
+        check (l.select ("year", "<", 1910).size () == 999, "loaded zone map");
+        check (l.select ("title", "t3").size () == 300, "loaded dictionaries");
+        check (l.insert (new Comparable [] { 9999, 1800, "t3" }) && l.select ("year", "<", 1900).size () == 1,
+               "loaded table takes inserts");
+    } // saveAndLoad
+
+    /************************************************************************************
+     * Create a table of n movies with ids 0 .. n-1 and years in id order.
+     *
+     * @param n  the number of movies
+     * @return  the table
+     */
+    private static Table movies (int n)
+    {
+        return movies (n, false);
+    } // movies
+
+    /************************************************************************************
+     * Create a table of n movies with ids 0 .. n-1 and years in id order, on or off
+     * the heap.
+     *
+     * @param n        the number of movies
+     * @param offHeap  whether to store the tuples off-heap
+     * @return  the table
+     */
+    private static Table movies (int n, boolean offHeap)
+    {
+        Table m = new Table ("m", "id year title", "Integer Integer String", "id", offHeap);
+        for (int i = 0; i < n; i++) m.insert (new Comparable [] { i, 1900 + i / 100, "t" + i });
+        return m;
+    } // movies
+
+    /************************************************************************************
+     * Return whether two tables hold equal tuples in the same order.
+     *
+     * @param t1  the first table
+     * @param t2  the second table
+     * @return  whether the tuples are the same
+     */
+    private static boolean sameRows (Table t1, Table t2)
+    {
+        List <Comparable []> r1 = t1.rows (), r2 = t2.rows ();
+        if (r1.size () != r2.size ()) return false;
+        for (int i = 0; i < r1.size (); i++) if (! Arrays.equals (r1.get (i), r2.get (i))) return false;
+        return true;
+    } // sameRows
+
+    /************************************************************************************
+     * Check that a condition holds.
+     *
+     * @param cond  the condition
+     * @param what  what is checked
+     */
+    private static void check (boolean cond, String what)
+    {
+        if (! cond) throw new AssertionError ("TableTest: " + what);
+        passed++;
+    } // check
+
+} // TableTest class
@@ -0,0 +1,202 @@
+/****************************************************************************************
+ * @file  ZoneMap.java
+ *
+ * @author   Kathryn Brown, Daniel Garcia, Matt Colley
+ */
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+/****************************************************************************************
+ * The ZoneMap class summarizes the tuples of a table in blocks of BLOCK consecutive
+ * rows.  For each block and attribute it keeps the minimum and maximum (non-null)
+ * values and the number of nulls, and for STRING attributes a small Bloom filter of
+ * the values.  A scan with a comparison predicate skips every block whose summary
+ * shows it cannot hold a match, so a selective predicate on data loaded roughly in
+ * order (e.g., year < 1980) reads a fraction of the blocks without a secondary index.
+ * The zone map only grows: appended tuples are added to the last block, while any
+ * other change to the tuples makes the table drop its zone map and build a new one.
+ */
+class ZoneMap
+      implements Serializable
+{
+    /** Version of the serialized form. */
+    private static final long serialVersionUID = 1L;
+    /** Number of rows in a block. */
+    static final int BLOCK = 1 << 10;
+    /** False positive probability of the Bloom filters of STRING attributes. */
+    private static final double FPP = 0.05;
+    /** Column position of a value hashed on its own. */
+    private static final int [] FIRST = { 0 };
+
+    /** Whether each attribute is of a STRING domain (and so has Bloom filters). */
+    private final boolean [] string;
+    /** The block summaries in row order. */
+    private final List <Zone> zones = new ArrayList <> ();
+    /** Number of rows summarized. */
+    private int rows = 0;
+
+    /************************************************************************************
+     * The Zone class is the summary of one block of rows.
+     */
+    private static class Zone
+            implements Serializable
+    {
+        /** Version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+        /** Minimum non-null value of each attribute (null if all are null). */
+        final Comparable [] min;
+        /** Maximum non-null value of each attribute (null if all are null). */
+        final Comparable [] max;
+        /** Number of nulls of each attribute. */
+        final int [] nulls;
+        /** Bloom filter of the values of each STRING attribute (null for others). */
+        final BloomFilter [] bloom;
+        /** Number of rows in the block. */
+        int n = 0;
+
+        /********************************************************************************
+         * Construct the summary of an empty block.
+         * @param string  whether each attribute is of a STRING domain
+         */
+        Zone (boolean [] string)
+        {
+            min   = new Comparable [string.length];
+            max   = new Comparable [string.length];
+            nulls = new int [string.length];
+            bloom = new BloomFilter [string.length];
+            for (int j = 0; j < string.length; j++) {
+                if (string [j]) bloom [j] = new BloomFilter (BLOCK, FPP);
+            } // for
+        } // constructor
+    } // Zone class
+
+    /************************************************************************************
+     * Construct an empty zone map for tuples of the given domains.
+     * @param domain  the attribute domains
+     */
+    ZoneMap (Class [] domain)
+    {
+        string = new boolean [domain.length];
+        for (int j = 0; j < domain.length; j++) {
+            string [j] = domain [j] == String.class || domain [j] == Character.class;
+        } // for
+    } // constructor
+
+    /************************************************************************************
+     * Summarize the tuples added to the list since the last call (the list must only
+     * have grown at its end).
+     *
+     * @param tuples  the tuples
+     */
+    void extend (List <Comparable []> tuples)
+    {
+        for (int i = rows; i < tuples.size (); i++) add (tuples.get (i));
+    } // extend
+
+    /************************************************************************************
+     * Return the number of rows summarized.
+     *
+     * @return  the row count
+     */
+    int rows ()
+    {
+        return rows;
+    } // rows
+
+    /************************************************************************************
+     * Return the number of blocks.
+     *
+     * @return  the block count
+     */
+    int blocks ()
+    {
+        return zones.size ();
+    } // blocks
+
+    /************************************************************************************
+     * Return whether block b may hold a row whose value v' for attribute c satisfies
+     * v' op v.  Null values satisfy no comparison.
+     *
+     * @param b   the block
+     * @param c   the attribute's column position
+     * @param op  the comparison operator (= != < <= > >=)
+     * @param v   the value compared with
+     * @return  false if no row of the block can match, true otherwise
+     */
+    @SuppressWarnings("unchecked")
+    boolean mayMatch (int b, int c, String op, Comparable v)
+    {
+        Zone z = zones.get (b);
+        if (z.nulls [c] == z.n) return false;                           // all null
+        if (v == null) return true;
+
+        int lo = v.compareTo (z.min [c]), hi = v.compareTo (z.max [c]);
+        switch (op) {
+        case "=":  return lo >= 0 && hi <= 0 && (z.bloom [c] == null || z.bloom [c].mightContain (hash (v)));
+        case "!=": return lo != 0 || hi != 0;
+        case "<":  return lo > 0;
+        case "<=": return lo >= 0;
+        case ">":  return hi < 0;
+        case ">=": return hi <= 0;
+        default:   throw new IllegalArgumentException ("unknown comparison " + op);
+        } // switch
+    } // mayMatch
+
+    /************************************************************************************
+     * Return the test on a compareTo result for the given comparison operator.
+     *
+     * @param op  the comparison operator (= != < <= > >=)
+     * @return  the test
+     */
+    static IntPredicate comparison (String op)
+    {
+        switch (op) {
+        case "=":  return c -> c == 0;
+        case "!=": return c -> c != 0;
+        case "<":  return c -> c < 0;
+        case "<=": return c -> c <= 0;
+        case ">":  return c -> c > 0;
+        case ">=": return c -> c >= 0;
+        default:   throw new IllegalArgumentException ("unknown comparison " + op);
+        } // switch
+    } // comparison
+
+    /************************************************************************************
+     * Add the next tuple to the summary of the last block, starting a new block when
+     * the last one is full.
+     *
+     * @param t  the tuple
+     */
+    @SuppressWarnings("unchecked")
+    private void add (Comparable [] t)
+    {
+        if (rows % BLOCK == 0) zones.add (new Zone (string));
+        Zone z = zones.get (zones.size () - 1);
+        for (int j = 0; j < t.length; j++) {
+            Comparable v = t [j];
+            if (v == null) {
+                z.nulls [j]++;
+                continue;
+            } // if
+            if (z.min [j] == null || v.compareTo (z.min [j]) < 0) z.min [j] = v;
+            if (z.max [j] == null || v.compareTo (z.max [j]) > 0) z.max [j] = v;
+            if (z.bloom [j] != null) z.bloom [j].add (hash (v));
+        } // for
+        z.n++;
+        rows++;
+    } // add
+
+    /************************************************************************************
+     * Compute the Bloom filter hash of a value.
+     *
+     * @param v  the value
+     * @return  the hash
+     */
+    private static long hash (Comparable v)
+    {
+        return BloomFilter.hash (new Comparable [] { v }, FIRST);
+    } // hash
+
+} // ZoneMap class